@@ -0,0 +1,53 @@
+package osp.Memory;
+
+/**
+   CLOCK replacement. A hand sweeps the frame table; a frame whose
+   referenced bit is set gets the bit cleared and is skipped, the first
+   frame found with the bit clear is the victim.
+*/
+class ClockPolicy implements ReplacementPolicy
+{
+	private int hand = 0;	// Next frame the hand looks at
+
+	public void frameLoaded(FrameTableEntry frame)
+	{
+		frame.setReferenced(true);
+	}
+
+	public void frameReferenced(FrameTableEntry frame)
+	{
+		// MMU.do_refer already sets the referenced bit
+	}
+
+	public void frameEvicted(FrameTableEntry frame)
+	{
+	}
+
+	public void frameReleased(FrameTableEntry frame)
+	{
+	}
+
+	public FrameTableEntry selectVictim()
+	{
+		int size = MMU.getFrameTableSize();
+		// Two sweeps are enough: the first one clears every referenced bit
+		for(int i = 0; i < 2 * size; i++)
+		{
+			FrameTableEntry frame = MMU.getFrame(hand);
+			hand = (hand + 1) % size;
+			if(frame.getPage() == null || !frame.isEvictable())
+			{
+				continue;
+			}
+			if(frame.isReferenced())
+			{
+				frame.setReferenced(false);
+			}
+			else
+			{
+				return frame;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,209 @@
+package osp.Memory;
+
+import java.util.*;
+import osp.IFLModules.*;
+import osp.Threads.*;
+
+/**
+   Copy-on-write sharing of frames between a task and its forks. When a
+   task is forked, every resident page of the parent is mapped into the
+   child's page table and both entries are marked copyOnWrite; the frame
+   keeps the list of entries mapping it. The first write through any of
+   them takes a private frame for the writer and copies the page into it
+   without I/O, and the last sharer left keeps the original frame.
+
+   A frame belongs to the resident list of the task whose page it holds
+   (frame.getPage()); when that task stops sharing, the frame passes to
+   another sharer. A shared frame can be evicted like any other: the
+   fault that takes it writes the page once for every other sharer
+   (writeBack()), since none of them has it on swap, and evict() then
+   invalidates all their entries, so each sharer faults its own copy
+   back in later.
+*/
+class CopyOnWrite
+{
+	static boolean forkTasks;		// Set from osp.tasks.fork in MMU.init()
+	static long sharedPages = 0;	// Child entries mapped to a parent frame at fork
+	private static PageTable lastTable;	// Page table created last, the parent of the next fork
+	static long copies = 0;			// Writes that had to copy a shared frame
+	static long writeBacks = 0;		// Pages written for the other sharers of an evicted frame
+
+	/**
+	   Called at the end of the PageTable constructor. With osp.tasks.fork
+	   set, every new task starts as a fork of the task created before it,
+	   as long as that one is still alive, which suits replica workloads.
+	*/
+	static void tableCreated(PageTable table)
+	{
+		if(forkTasks && lastTable != null && lastTable.getTask().getStatus() == GlobalVariables.TaskLive)
+		{
+			share(lastTable, table);
+		}
+		lastTable = table;
+	}
+
+	// Maps every resident page of parent into child, copy-on-write
+	static void share(PageTable parent, PageTable child)
+	{
+		for(int i = 0; i < parent.pages.length; i++)
+		{
+			PageTableEntry parentPage = parent.pages[i];
+			if(parentPage == null || !parentPage.isValid() || parentPage.getFrame().isReserved())
+			{
+				continue;
+			}
+			FrameTableEntry frame = parentPage.getFrame();
+			if(frame.sharers == null)
+			{
+				frame.sharers = new ArrayList<PageTableEntry>();
+				frame.sharers.add(frame.getPage());
+				frame.getPage().copyOnWrite = true;
+				parent.sharedEntries++;
+			}
+			PageTableEntry page = child.getEntry(i);
+			page.setFrame(frame);
+			page.setValid(true);
+			page.copyOnWrite = true;
+			child.sharedEntries++;
+			frame.sharers.add(page);
+			sharedPages++;
+		}
+	}
+
+	/**
+	   Gives the thread a private copy of a shared page it is about to
+	   write. The page is detached from the shared frame and faulted into
+	   a new one; SwapIn sees copySource and copies instead of reading.
+	   The source frame is locked meanwhile so it cannot be evicted
+	   before the copy is made. Locks that pending I/O holds through the
+	   page move with it to the new frame, so do_unlock releases the
+	   frame the page maps by then.
+	*/
+	static void fault(ThreadCB thread, PageTableEntry page)
+	{
+		FrameTableEntry source = page.getFrame();
+		source.incrementLockCount();
+		for(int i = 0; i < page.lockCount; i++)
+		{
+			source.decrementLockCount();
+		}
+		unshare(page);
+		page.copySource = source;
+		PageFaultHandler.handlePageFault(thread, GlobalVariables.MemoryWrite, page);
+		page.copySource = null;
+		FrameTableEntry copy = page.getFrame();
+		for(int i = 0; copy != null && i < page.lockCount; i++)
+		{
+			copy.incrementLockCount();
+		}
+		source.decrementLockCount();
+		copies++;
+	}
+
+	/**
+	   Writes the page in a shared victim frame to the swap file of every
+	   sharer except the owner, whose copy is handled like any other
+	   dirty victim. Returns true at once for a private frame.
+
+	   @return false if a sharer's swap file could not be created
+	*/
+	static boolean writeBack(ThreadCB thread, FrameTableEntry frame)
+	{
+		if(frame.sharers == null)
+		{
+			return true;
+		}
+		// A sharer may copy the page while a write is in progress, so work on a snapshot
+		PageTableEntry[] pages = frame.sharers.toArray(new PageTableEntry[frame.sharers.size()]);
+		for(int i = 0; i < pages.length; i++)
+		{
+			if(pages[i] == frame.getPage() || pages[i].getFrame() != frame)
+			{
+				continue;
+			}
+			if(!PageFaultHandler.swapOutPage(thread, pages[i], false))
+			{
+				return false;
+			}
+			writeBacks++;
+			if(thread.getStatus() == GlobalVariables.ThreadKill)
+			{
+				return true;
+			}
+		}
+		return true;
+	}
+
+	// Invalidates every sharer but the owner before the frame is evicted, leaving it private
+	static void detach(FrameTableEntry frame)
+	{
+		ArrayList<PageTableEntry> sharers = frame.sharers;
+		for(int i = 0; i < sharers.size(); i++)
+		{
+			PageTableEntry page = sharers.get(i);
+			page.copyOnWrite = false;
+			page.getTask().getPageTable().sharedEntries--;
+			if(page == frame.getPage())
+			{
+				continue;
+			}
+			if(MMU.tlb != null)
+			{
+				MMU.tlb.invalidate(page);
+			}
+			page.setValid(false);
+			page.setFrame(null);
+		}
+		frame.sharers = null;
+	}
+
+	// Drops the page from its shared frame, leaving the page invalid
+	static void unshare(PageTableEntry page)
+	{
+		FrameTableEntry frame = page.getFrame();
+		ArrayList<PageTableEntry> sharers = frame.sharers;
+		sharers.remove(page);
+		page.copyOnWrite = false;
+		page.getTask().getPageTable().sharedEntries--;
+		if(MMU.tlb != null)
+		{
+			MMU.tlb.invalidate(page);
+		}
+		page.setValid(false);
+		page.setFrame(null);
+
+		if(frame.getPage() == page)
+		{
+			// The new owner has no copy of the page on swap, so it must be written before eviction
+			PageTableEntry owner = sharers.get(0);
+			page.getTask().getPageTable().removeResidentFrame(frame);
+			frame.setPage(owner);
+			frame.setDirty(true);
+			owner.getTask().getPageTable().addResidentFrame(frame);
+		}
+		if(sharers.size() == 1)
+		{
+			PageTableEntry last = sharers.get(0);
+			last.copyOnWrite = false;
+			last.getTask().getPageTable().sharedEntries--;
+			frame.sharers = null;
+		}
+	}
+
+	// Stops every sharing of the task's pages, before its memory is freed
+	static void release(PageTable table)
+	{
+		if(lastTable == table)
+		{
+			lastTable = null;
+		}
+		for(int i = 0; i < table.pages.length && table.sharedEntries > 0; i++)
+		{
+			PageTableEntry page = table.pages[i];
+			if(page != null && page.copyOnWrite)
+			{
+				unshare(page);
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package osp.Memory;
+
+/**
+   Intrusive doubly linked list of frames used by the replacement policies.
+   The links live in FrameTableEntry, so a frame can be in at most one list
+   at a time, and moving or unlinking it costs O(1).
+*/
+class FrameList
+{
+	private FrameTableEntry head;	// Most recently inserted or used frame
+	private FrameTableEntry tail;	// Oldest frame
+	private int size;
+
+	int size()
+	{
+		return size;
+	}
+
+	boolean contains(FrameTableEntry frame)
+	{
+		return frame.list == this;
+	}
+
+	// Unlinks the frame, if it is in this list
+	void remove(FrameTableEntry frame)
+	{
+		if(frame.list != this)
+		{
+			return;
+		}
+		if(frame.listPrev != null)
+			frame.listPrev.listNext = frame.listNext;
+		else
+			head = frame.listNext;
+		if(frame.listNext != null)
+			frame.listNext.listPrev = frame.listPrev;
+		else
+			tail = frame.listPrev;
+		frame.listPrev = null;
+		frame.listNext = null;
+		frame.list = null;
+		size--;
+	}
+
+	// Links the frame at the head, taking it out of any other list first
+	void moveToFront(FrameTableEntry frame)
+	{
+		if(frame == head)
+		{
+			return;
+		}
+		if(frame.list != null)
+		{
+			frame.list.remove(frame);
+		}
+		frame.listNext = head;
+		if(head != null)
+			head.listPrev = frame;
+		head = frame;
+		if(tail == null)
+			tail = frame;
+		frame.list = this;
+		size++;
+	}
+
+	// Oldest frame that is neither reserved nor locked, or null
+	FrameTableEntry victim()
+	{
+		for(FrameTableEntry frame = tail; frame != null; frame = frame.listPrev)
+		{
+			if(frame.isEvictable())
+			{
+				return frame;
+			}
+		}
+		return null;
+	}
+}
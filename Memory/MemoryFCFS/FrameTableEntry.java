@@ -6,6 +6,7 @@ package osp.Memory;
 
     @OSPProject Memory
 */
+import java.util.*;
 import osp.Tasks.*;
 import osp.Interrupts.*;
 import osp.Utilities.*;
@@ -13,6 +14,16 @@ import osp.IFLModules.IflFrameTableEntry;
 
 public class FrameTableEntry extends IflFrameTableEntry
 {
+	long lastReference;			// HClock time of the last reference to this frame
+	int referenceCount;			// References since the page was loaded, used by LFU
+	FrameTableEntry listPrev;	// Neighbour towards the head of the policy list
+	FrameTableEntry listNext;	// Neighbour towards the tail of the policy list
+	FrameList list;				// Policy list this frame is linked into, or null
+	PageTable residentOwner;		// Page table whose resident list holds this frame, or null
+	FrameTableEntry residentPrev;	// Neighbours in the owner's resident list
+	FrameTableEntry residentNext;
+	ArrayList<PageTableEntry> sharers;	// Entries of all tasks mapping this frame copy-on-write, null if private
+
     /**
        The frame constructor. Must have
 
@@ -26,8 +37,23 @@ public class FrameTableEntry extends IflFrameTableEntry
     {
         // your code goes here
 		super(frameID);
+		lastReference = 0;
+		referenceCount = 0;
+		listPrev = null;
+		listNext = null;
+		list = null;
+		residentOwner = null;
+		residentPrev = null;
+		residentNext = null;
+		sharers = null;
     }
 
+	// A frame may be given to a new page only if nobody holds it
+	boolean isEvictable()
+	{
+		return (!isReserved()) && (getLockCount() == 0);
+	}
+
 
     /*
        Feel free to add methods/fields to improve the readability of your code
@@ -17,6 +17,16 @@ import osp.Interrupts.*;
 */
 public class MMU extends IflMMU
 {
+	// Replacement policy used when the osp.memory.policy property is not set
+	static final String DEFAULT_POLICY = "FIFO";
+
+	private static int offsetBits;	// Bits of a virtual address that give the offset within a page
+	private static int pageMask;	// Mask applied after the shift to get the page number
+
+	static TLB tlb;						// Translation lookaside buffer, null when disabled
+	private static boolean tlbTagged;	// Whether TLB entries survive a change of the PTBR
+	private static PageTable lastPTBR;	// Page table seen by the previous memory reference
+
     /** 
         This method is called once before the simulation starts. 
 	Can be used to initialize the frame table and other static variables.
@@ -26,12 +36,87 @@ public class MMU extends IflMMU
     public static void init()
     {
         // your code goes here
+		offsetBits = getVirtualAddressBits() - getPageAddressBits();
+		pageMask = (1 << getPageAddressBits()) - 1;
+
+		PageFaultHandler.freeFrames = new FrameList();
 		for(int i = 0; i < MMU.getFrameTableSize(); i++)
     	{
         	setFrame(i, new FrameTableEntry(i));
+        	PageFaultHandler.freeFrames.moveToFront(getFrame(i));
         }
+		PageFaultHandler.policy = createPolicy(System.getProperty("osp.memory.policy", DEFAULT_POLICY));
+
+		// By default keep 1/16 of memory free and refill up to 1/8
+		int low = Integer.getInteger("osp.memory.freeLow", Math.max(1, getFrameTableSize() / 16)).intValue();
+		int high = Integer.getInteger("osp.memory.freeHigh", 2 * low).intValue();
+		PageFaultHandler.lowWatermark = low;
+		PageFaultHandler.highWatermark = Math.max(low, high);
+		PageTable.lazy = Boolean.getBoolean("osp.memory.lazyPageTable");
+		CopyOnWrite.forkTasks = Boolean.getBoolean("osp.tasks.fork");
+		PageFaultHandler.lazySwap = Boolean.getBoolean("osp.tasks.lazySwap");
+
+		// Page-fault-frequency allocation; interval bounds are in HClock ticks
+		FrameAllocator.enabled = Boolean.getBoolean("osp.memory.pff");
+		FrameAllocator.lowerInterval = Long.getLong("osp.memory.pffLower", 50).longValue();
+		FrameAllocator.upperInterval = Long.getLong("osp.memory.pffUpper", 500).longValue();
+		FrameAllocator.initialQuota = Integer.getInteger("osp.memory.pffQuota", Math.max(1, getFrameTableSize() / 8)).intValue();
+		PageFaultHandler.maxReadAhead = Integer.getInteger("osp.memory.readAheadMax", 0).intValue();
+		PageFaultHandler.swapCluster = Integer.getInteger("osp.memory.swapCluster", 1).intValue();
+
+		// Swap I/O ordering: NONE (arrival order), CLOOK or SSTF, with a deadline in ticks
+		String swapScheduler = System.getProperty("osp.memory.swapScheduler", "NONE").trim().toUpperCase();
+		int swapMode = SwapScheduler.NONE;
+		if(swapScheduler.equals("CLOOK") || swapScheduler.equals("C-LOOK"))
+			swapMode = SwapScheduler.CLOOK;
+		else if(swapScheduler.equals("SSTF"))
+			swapMode = SwapScheduler.SSTF;
+		SwapScheduler.reset(swapMode, Long.getLong("osp.memory.swapDeadline", 500).longValue());
+
+		// Off unless osp.memory.tlbSets is set; a TLB with 0 sets or ways is disabled
+		int tlbSets = Integer.getInteger("osp.memory.tlbSets", 0).intValue();
+		int tlbWays = Integer.getInteger("osp.memory.tlbWays", 4).intValue();
+		tlb = (tlbSets > 0 && tlbWays > 0) ? new TLB(tlbSets, tlbWays) : null;
+		tlbTagged = Boolean.valueOf(System.getProperty("osp.memory.tlbTagged", "true")).booleanValue();
+		lastPTBR = null;
+
+		// Page cleaner writes dirty frames out ahead of eviction; off unless an interval is given
+		int cleanerInterval = Integer.getInteger("osp.memory.cleanerInterval", 0).intValue();
+		int cleanerBatch = Integer.getInteger("osp.memory.cleanerBatch", 4).intValue();
+		if(cleanerInterval > 0 && cleanerBatch > 0)
+		{
+			Daemon.create("Page cleaner", new PageCleaner(cleanerBatch), cleanerInterval);
+		}
+		MemoryMetrics.init();
     }
 
+	/**
+	   Returns the replacement policy with the given name: FIFO, LRU,
+	   CLOCK, SECOND_CHANCE, LFU, ARC or 2Q. Unknown names fall back to
+	   the default policy.
+	*/
+	static ReplacementPolicy createPolicy(String name)
+	{
+		String key = name.trim().toUpperCase();
+		if(key.equals("FIFO") || key.equals("FCFS"))
+			return new FIFOPolicy();
+		if(key.equals("LRU"))
+			return new LRUPolicy();
+		if(key.equals("CLOCK"))
+			return new ClockPolicy();
+		if(key.equals("SECOND_CHANCE") || key.equals("ESC"))
+			return new SecondChancePolicy();
+		if(key.equals("LFU"))
+			return new LFUPolicy();
+		if(key.equals("ARC"))
+			return new ARCPolicy(getFrameTableSize());
+		if(key.equals("2Q"))
+			return new TwoQPolicy(getFrameTableSize());
+
+		MyOut.print("osp.Memory.MMU", "Unknown replacement policy " + name + ", using " + DEFAULT_POLICY);
+		return createPolicy(DEFAULT_POLICY);
+	}
+
     /**
        This method handlies memory references. The method must 
        calculate, which memory page contains the memoryAddress,
@@ -55,12 +140,33 @@ public class MMU extends IflMMU
 					  int referenceType, ThreadCB thread)
     {
         // your code goes here
-		int pageNumber = memoryAddress / (int)Math.pow(2.0, getVirtualAddressBits() - getPageAddressBits());
-		PageTableEntry tempPageTableEntry = getPTBR().pages[pageNumber];
+		int pageNumber = (memoryAddress >>> offsetBits) & pageMask;
+		PageTable pageTable = getPTBR();
+		checkAddressSpace(pageTable);
+		PageTableEntry tempPageTableEntry = (tlb == null) ? null : tlb.lookup(pageTable, pageNumber);
+		if(tempPageTableEntry == null)
+		{
+			tempPageTableEntry = pageTable.getEntry(pageNumber);
+			if(tlb != null && tempPageTableEntry.isValid())
+			{
+				tlb.insert(pageTable, pageNumber, tempPageTableEntry);
+			}
+		}
 		
+		if(referenceType == GlobalVariables.MemoryWrite && tempPageTableEntry.copyOnWrite && tempPageTableEntry.isValid())
+		{
+			// First write to a page shared with a fork, copy it
+			CopyOnWrite.fault(thread, tempPageTableEntry);
+			if(thread.getStatus() == GlobalVariables.ThreadKill || !tempPageTableEntry.isValid())
+			{
+				return tempPageTableEntry;
+			}
+		}
+
 		if(tempPageTableEntry.isValid())
 		{
 			tempPageTableEntry.getFrame().setReferenced(true);
+			PageFaultHandler.touch(tempPageTableEntry.getFrame());
 			if(referenceType == GlobalVariables.MemoryWrite)
 			{
 				tempPageTableEntry.getFrame().setDirty(true);
@@ -69,6 +175,15 @@ public class MMU extends IflMMU
 		}
 		else
 		{
+			if(pageTable.deactivated)
+			{
+				// Load control took this task out of memory, wait until it is let back in
+				thread.suspend(pageTable.reactivation);
+				if(thread.getStatus() == GlobalVariables.ThreadKill)
+				{
+					return tempPageTableEntry;
+				}
+			}
 			if(tempPageTableEntry.getValidatingThread() == null)
 			{
 				tempPageTableEntry.pageFaulted = true;
@@ -92,7 +207,7 @@ public class MMU extends IflMMU
 		}
 		
 		tempPageTableEntry.getFrame().setReferenced(true);
-		//tempPageTableEntry.reftimer=HClock.get();
+		PageFaultHandler.touch(tempPageTableEntry.getFrame());
 		if(referenceType == GlobalVariables.MemoryWrite)
 		{
 			tempPageTableEntry.getFrame().setDirty(true);
@@ -100,6 +215,41 @@ public class MMU extends IflMMU
 		return tempPageTableEntry;
     }
 
+	/**
+	   Detects an address-space switch from do_refer: an untagged TLB
+	   cannot tell address spaces apart, so it is flushed when the page
+	   table in the PTBR differs from the one of the previous reference.
+	*/
+	private static void checkAddressSpace(PageTable pageTable)
+	{
+		if(tlb != null && !tlbTagged && pageTable != lastPTBR)
+		{
+			tlb.flush();
+		}
+		lastPTBR = pageTable;
+	}
+
+	// Fraction of memory references translated by the TLB
+	public static double getTLBHitRatio()
+	{
+		return tlb == null ? 0.0 : tlb.hitRatio();
+	}
+
+	// Mean ticks from a page fault to its page becoming valid
+	public static double getMeanFaultServiceTime()
+	{
+		return MemoryMetrics.faultService.mean();
+	}
+
+	/**
+	   Returns the memory metrics collected so far, as CSV or, if json
+	   is true, as JSON.
+	*/
+	public static String getMetrics(boolean json)
+	{
+		return json ? MemoryMetrics.toJSON() : MemoryMetrics.toCSV();
+	}
+
     /** Called by OSP after printing an error message. The student can
 	insert code here to print various tables and data structures
 	in their state just after the error happened.  The body can be
@@ -110,6 +260,7 @@ public class MMU extends IflMMU
     public static void atError()
     {
         // your code goes here
+		MyOut.print("osp.Memory.MMU", MemoryMetrics.toCSV());
 
     }
 
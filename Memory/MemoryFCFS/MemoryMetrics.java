@@ -0,0 +1,250 @@
+package osp.Memory;
+
+import java.io.*;
+import java.util.*;
+import osp.IFLModules.*;
+import osp.Hardware.*;
+import osp.Threads.*;
+import osp.Utilities.*;
+
+/**
+   Counters and histograms for the Memory module, so replacement
+   policies can be compared by more than the fault count. The fault path
+   only bumps counters (global ones here, per-task ones in PageTable) and
+   records into preallocated histograms. If osp.memory.metricsInterval is
+   set, a daemon snapshots the resident set of every live task that
+   often, into a ring of the last SAMPLES rows held in preallocated
+   arrays; the per-task totals are kept when a task exits.
+
+   toCSV()/toJSON() format everything on demand, and if
+   osp.memory.metricsFile is set the report is written to that file when
+   the simulator exits (JSON if the name ends in .json, CSV otherwise).
+   All times are in HClock ticks.
+*/
+class MemoryMetrics implements DaemonInterface
+{
+	static long faults = 0;				// Page faults handled
+	static long cleanEvictions = 0;		// Victims that could be reused without a write
+	static long dirtyEvictions = 0;		// Victims the faulting thread had to swap out first
+	static long swapIns = 0;			// Pages read from swap
+	static long zeroFills = 0;			// Pages never swapped out, filled with zeros instead of read
+	static long swapOuts = 0;			// Pages written to swap, by faults and the page cleaner
+	static long locks = 0;				// Calls of PageTableEntry.do_lock
+	static long lockWaits = 0;			// Locks that waited for another thread's page fault
+	static long sharedLocks = 0;		// Locks on a frame that was already locked
+
+	static final Histogram faultService = new Histogram();		// Fault entry to page valid
+	static final Histogram dirtyFaultService = new Histogram();	// The same, for faults that swapped out a victim
+	static final Histogram lockWait = new Histogram();			// Time do_lock waited for another thread's fault
+	static final Histogram residentSet = new Histogram();		// Frames per live task, at every snapshot
+	static final Histogram swapQueueWait = new Histogram();		// Time a swap transfer waited in the SwapScheduler
+	static final Histogram cleanerStall = new Histogram();		// Time the running thread was blocked on a page cleaner write
+
+	private static ArrayList<PageTable> tables = new ArrayList<PageTable>();	// Page tables of live tasks
+	static final int SAMPLES = 4096;								// Timeline rows kept, newer ones overwrite the oldest
+	private static long[] sampleTime = new long[SAMPLES];
+	private static int[] sampleTask = new int[SAMPLES];				// Task ID, or -1 for the number of free frames
+	private static int[] sampleFrames = new int[SAMPLES];
+	private static long samples = 0;								// Timeline rows written so far
+	private static StringBuffer finishedTasks = new StringBuffer();	// task,faults,swapIns,swapOuts,peakFrames rows of exited tasks
+
+	// Starts the snapshot daemon and the export at exit, from MMU.init()
+	static void init()
+	{
+		tables.clear();
+		samples = 0;
+		finishedTasks.setLength(0);
+		int interval = Integer.getInteger("osp.memory.metricsInterval", 0).intValue();
+		if(interval > 0)
+		{
+			Daemon.create("Memory metrics", new MemoryMetrics(), interval);
+		}
+
+		final String fileName = System.getProperty("osp.memory.metricsFile");
+		if(fileName == null)
+		{
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run()
+			{
+				try
+				{
+					PrintWriter out = new PrintWriter(new FileWriter(fileName));
+					out.print(fileName.endsWith(".json") ? toJSON() : toCSV());
+					out.close();
+				}
+				catch(IOException e)
+				{
+					System.err.println("Cannot write memory metrics to " + fileName + ": " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	static void register(PageTable table)
+	{
+		tables.add(table);
+	}
+
+	// Keeps the totals of a task whose memory is being released
+	static void unregister(PageTable table)
+	{
+		if(!tables.remove(table))
+		{
+			return;
+		}
+		finishedTasks.append(taskRow(table));
+	}
+
+	// Snapshot of the resident set of every live task
+	public void unleash(ThreadCB thread)
+	{
+		long now = HClock.get();
+		for(int i = 0; i < tables.size(); i++)
+		{
+			PageTable table = tables.get(i);
+			residentSet.record(table.getResidentSetSize());
+			sample(now, table.getTask().getID(), table.getResidentSetSize());
+		}
+		sample(now, -1, PageFaultHandler.freeFrames.size());
+	}
+
+	private static void sample(long time, int task, int frames)
+	{
+		int i = (int)(samples % SAMPLES);
+		sampleTime[i] = time;
+		sampleTask[i] = task;
+		sampleFrames[i] = frames;
+		samples++;
+	}
+
+	// time,task,frames rows of the samples still in the ring, oldest first
+	private static String timeline()
+	{
+		StringBuffer rows = new StringBuffer();
+		for(long n = Math.max(0, samples - SAMPLES); n < samples; n++)
+		{
+			int i = (int)(n % SAMPLES);
+			rows.append(sampleTime[i] + "," + (sampleTask[i] < 0 ? "free" : String.valueOf(sampleTask[i])) + "," + sampleFrames[i] + "\n");
+		}
+		return rows.toString();
+	}
+
+	private static String taskRow(PageTable table)
+	{
+		return table.getTask().getID() + "," + table.faults + "," + table.swapIns + "," + table.swapOuts + "," + table.peakResidentSet + "\n";
+	}
+
+	private static String histogramCSV(String name, Histogram h)
+	{
+		return name + "," + h.count() + "," + h.mean() + "," + h.min() + ","
+			+ h.percentile(50) + "," + h.percentile(90) + "," + h.percentile(99) + "," + h.max() + "\n";
+	}
+
+	private static String histogramJSON(String name, Histogram h)
+	{
+		return ",\"" + name + "\":{\"count\":" + h.count()
+			+ ",\"mean\":" + h.mean()
+			+ ",\"min\":" + h.min()
+			+ ",\"p50\":" + h.percentile(50)
+			+ ",\"p90\":" + h.percentile(90)
+			+ ",\"p99\":" + h.percentile(99)
+			+ ",\"max\":" + h.max() + "}";
+	}
+
+	// Totals, histograms, per-task counts and the resident set timeline as CSV sections
+	static String toCSV()
+	{
+		StringBuffer csv = new StringBuffer();
+		csv.append("metric,count,mean,min,p50,p90,p99,max\n");
+		csv.append("faults," + faults + ",,,,,,\n");
+		csv.append("cleanEvictions," + cleanEvictions + ",,,,,,\n");
+		csv.append("dirtyEvictions," + dirtyEvictions + ",,,,,,\n");
+		csv.append("swapIns," + swapIns + ",,,,,,\n");
+		csv.append("zeroFills," + zeroFills + ",,,,,,\n");
+		csv.append("swapOuts," + swapOuts + ",,,,,,\n");
+		csv.append("locks," + locks + ",,,,,,\n");
+		csv.append("lockWaits," + lockWaits + ",,,,,,\n");
+		csv.append("sharedLocks," + sharedLocks + ",,,,,,\n");
+		csv.append("cowSharedPages," + CopyOnWrite.sharedPages + ",,,,,,\n");
+		csv.append("cowCopies," + CopyOnWrite.copies + ",,,,,,\n");
+		csv.append("cowWriteBacks," + CopyOnWrite.writeBacks + ",,,,,,\n");
+		csv.append("swapDeadlineMisses," + SwapScheduler.deadlineMisses + ",,,,,,\n");
+		csv.append("pffDeactivations," + FrameAllocator.deactivations + ",,,,,,\n");
+		csv.append(histogramCSV("faultService", faultService));
+		csv.append(histogramCSV("dirtyFaultService", dirtyFaultService));
+		csv.append(histogramCSV("lockWait", lockWait));
+		csv.append(histogramCSV("residentSet", residentSet));
+		csv.append(histogramCSV("swapQueueWait", swapQueueWait));
+		csv.append(histogramCSV("cleanerStall", cleanerStall));
+
+		csv.append("\ntask,faults,swapIns,swapOuts,peakFrames\n");
+		csv.append(finishedTasks);
+		for(int i = 0; i < tables.size(); i++)
+		{
+			csv.append(taskRow(tables.get(i)));
+		}
+
+		csv.append("\ntime,task,frames\n");
+		csv.append(timeline());
+		return csv.toString();
+	}
+
+	static String toJSON()
+	{
+		StringBuffer json = new StringBuffer();
+		json.append("{\"clock\":" + HClock.get()
+			+ ",\"faults\":" + faults
+			+ ",\"cleanEvictions\":" + cleanEvictions
+			+ ",\"dirtyEvictions\":" + dirtyEvictions
+			+ ",\"swapIns\":" + swapIns
+			+ ",\"zeroFills\":" + zeroFills
+			+ ",\"swapOuts\":" + swapOuts
+			+ ",\"locks\":" + locks
+			+ ",\"lockWaits\":" + lockWaits
+			+ ",\"sharedLocks\":" + sharedLocks
+			+ ",\"cowSharedPages\":" + CopyOnWrite.sharedPages
+			+ ",\"cowCopies\":" + CopyOnWrite.copies
+			+ ",\"cowWriteBacks\":" + CopyOnWrite.writeBacks
+			+ ",\"swapDeadlineMisses\":" + SwapScheduler.deadlineMisses
+			+ ",\"pffDeactivations\":" + FrameAllocator.deactivations);
+		json.append(histogramJSON("faultService", faultService));
+		json.append(histogramJSON("dirtyFaultService", dirtyFaultService));
+		json.append(histogramJSON("lockWait", lockWait));
+		json.append(histogramJSON("residentSet", residentSet));
+		json.append(histogramJSON("swapQueueWait", swapQueueWait));
+		json.append(histogramJSON("cleanerStall", cleanerStall));
+
+		json.append(",\"tasks\":[");
+		String rows = finishedTasks.toString();
+		for(int i = 0; i < tables.size(); i++)
+		{
+			rows += taskRow(tables.get(i));
+		}
+		appendRows(json, rows, new String[] {"task", "faults", "swapIns", "swapOuts", "peakFrames"});
+		json.append("],\"timeline\":[");
+		appendRows(json, timeline(), new String[] {"time", "task", "frames"});
+		json.append("]}\n");
+		return json.toString();
+	}
+
+	// Turns CSV rows into JSON objects with the given keys
+	private static void appendRows(StringBuffer json, String rows, String[] keys)
+	{
+		StringTokenizer lines = new StringTokenizer(rows, "\n");
+		boolean first = true;
+		while(lines.hasMoreTokens())
+		{
+			String[] values = lines.nextToken().split(",");
+			json.append(first ? "{" : ",{");
+			for(int i = 0; i < keys.length; i++)
+			{
+				boolean number = values[i].matches("-?[0-9]+");
+				json.append((i == 0 ? "" : ",") + "\"" + keys[i] + "\":" + (number ? values[i] : "\"" + values[i] + "\""));
+			}
+			json.append("}");
+			first = false;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package osp.Memory;
+
+/**
+   Enhanced second-chance replacement. Frames are ranked by their
+   (referenced, dirty) bits and the hand looks for the lowest class first:
+   (0,0) is evicted before (0,1), so clean pages are preferred because
+   they need no swap-out.
+*/
+class SecondChancePolicy implements ReplacementPolicy
+{
+	private int hand = 0;	// Next frame the hand looks at
+
+	public void frameLoaded(FrameTableEntry frame)
+	{
+		frame.setReferenced(true);
+	}
+
+	public void frameReferenced(FrameTableEntry frame)
+	{
+		// MMU.do_refer already sets the referenced and dirty bits
+	}
+
+	public void frameEvicted(FrameTableEntry frame)
+	{
+	}
+
+	public void frameReleased(FrameTableEntry frame)
+	{
+	}
+
+	public FrameTableEntry selectVictim()
+	{
+		int size = MMU.getFrameTableSize();
+		// Pass 1 looks for (0,0), pass 2 for (0,1) while clearing referenced
+		// bits. After that every bit is clear, so passes 3 and 4 repeat the
+		// search and must succeed if any frame is evictable.
+		for(int pass = 0; pass < 4; pass++)
+		{
+			boolean wantDirty = (pass % 2 == 1);
+			for(int i = 0; i < size; i++)
+			{
+				FrameTableEntry frame = MMU.getFrame(hand);
+				hand = (hand + 1) % size;
+				if(frame.getPage() == null || !frame.isEvictable())
+				{
+					continue;
+				}
+				if(!frame.isReferenced() && frame.isDirty() == wantDirty)
+				{
+					return frame;
+				}
+				if(wantDirty)
+				{
+					frame.setReferenced(false);
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,126 @@
+package osp.Memory;
+
+/**
+   Software translation lookaside buffer in front of the page tables.
+   It is set-associative: a page number selects a set, and the entry may
+   sit in any of the set's ways. Each entry is tagged with the page table
+   it came from. When the TLB is configured as untagged, it must be
+   flushed whenever the PTBR changes (see MMU.checkAddressSpace()).
+
+   Only valid pages are cached. PageFaultHandler.evict() and
+   PageTable.do_deallocateMemory() invalidate entries whose page leaves
+   memory, so a TLB hit always gives a resident page.
+*/
+class TLB
+{
+	private int setMask;				// Number of sets minus one; the set count is a power of two
+	private int ways;					// Entries per set
+	private PageTable[] tables;			// Tag: page table of the cached entry, null if empty
+	private int[] pageNumbers;			// Tag: page number of the cached entry
+	private PageTableEntry[] entries;	// Cached page table entries
+	private long[] lastUse;				// Use stamps for LRU replacement within a set
+	private long useClock = 0;
+	long hits = 0;
+	long misses = 0;
+
+	TLB(int sets, int ways)
+	{
+		int size = 1;
+		while(size < sets)
+		{
+			size <<= 1;
+		}
+		this.setMask = size - 1;
+		this.ways = ways;
+		tables = new PageTable[size * ways];
+		pageNumbers = new int[size * ways];
+		entries = new PageTableEntry[size * ways];
+		lastUse = new long[size * ways];
+	}
+
+	// Cached entry for the page, or null on a miss
+	PageTableEntry lookup(PageTable table, int pageNumber)
+	{
+		int base = (pageNumber & setMask) * ways;
+		for(int i = base; i < base + ways; i++)
+		{
+			if(tables[i] == table && pageNumbers[i] == pageNumber)
+			{
+				lastUse[i] = ++useClock;
+				hits++;
+				return entries[i];
+			}
+		}
+		misses++;
+		return null;
+	}
+
+	// Caches the entry, replacing the least recently used way of its set
+	void insert(PageTable table, int pageNumber, PageTableEntry entry)
+	{
+		int base = (pageNumber & setMask) * ways;
+		int slot = base;
+		for(int i = base; i < base + ways; i++)
+		{
+			if(tables[i] == null)
+			{
+				slot = i;
+				break;
+			}
+			if(lastUse[i] < lastUse[slot])
+			{
+				slot = i;
+			}
+		}
+		tables[slot] = table;
+		pageNumbers[slot] = pageNumber;
+		entries[slot] = entry;
+		lastUse[slot] = ++useClock;
+	}
+
+	// Drops the entry of a page that is leaving memory
+	void invalidate(PageTableEntry page)
+	{
+		int base = (page.getID() & setMask) * ways;
+		for(int i = base; i < base + ways; i++)
+		{
+			if(entries[i] == page)
+			{
+				clear(i);
+			}
+		}
+	}
+
+	// Drops every entry that belongs to the page table
+	void invalidate(PageTable table)
+	{
+		for(int i = 0; i < tables.length; i++)
+		{
+			if(tables[i] == table)
+			{
+				clear(i);
+			}
+		}
+	}
+
+	void flush()
+	{
+		for(int i = 0; i < tables.length; i++)
+		{
+			clear(i);
+		}
+	}
+
+	double hitRatio()
+	{
+		long lookups = hits + misses;
+		return lookups == 0 ? 0.0 : (double)hits / lookups;
+	}
+
+	private void clear(int slot)
+	{
+		tables[slot] = null;
+		entries[slot] = null;
+		lastUse[slot] = 0;
+	}
+}
@@ -0,0 +1,88 @@
+package osp.Memory;
+
+import java.util.*;
+
+/**
+   2Q replacement. New pages enter the FIFO queue A1in; only a page that
+   faults again while remembered in the ghost queue A1out is promoted to
+   the LRU queue Am. Pages touched once in a scan therefore never push
+   the hot pages out of Am.
+*/
+class TwoQPolicy implements ReplacementPolicy
+{
+	private int inLimit;	// Kin, the size A1in may reach before it is drained first
+	private int outLimit;	// Kout, the number of ghosts kept in A1out
+	private FrameList a1in = new FrameList();
+	private FrameList am = new FrameList();
+	private LinkedHashSet<PageTableEntry> a1out = new LinkedHashSet<PageTableEntry>();
+
+	TwoQPolicy(int capacity)
+	{
+		inLimit = Math.max(1, capacity / 4);
+		outLimit = Math.max(1, capacity / 2);
+	}
+
+	public void frameLoaded(FrameTableEntry frame)
+	{
+		if(a1out.remove(frame.getPage()))
+		{
+			am.moveToFront(frame);
+		}
+		else
+		{
+			a1in.moveToFront(frame);
+		}
+	}
+
+	public void frameReferenced(FrameTableEntry frame)
+	{
+		// References inside A1in are treated as correlated and ignored
+		if(am.contains(frame))
+		{
+			am.moveToFront(frame);
+		}
+	}
+
+	public void frameEvicted(FrameTableEntry frame)
+	{
+		if(a1in.contains(frame))
+		{
+			a1in.remove(frame);
+			a1out.add(frame.getPage());
+			if(a1out.size() > outLimit)
+			{
+				Iterator<PageTableEntry> it = a1out.iterator();
+				it.next();
+				it.remove();
+			}
+		}
+		else
+		{
+			am.remove(frame);
+		}
+	}
+
+	public void frameReleased(FrameTableEntry frame)
+	{
+		a1in.remove(frame);
+		am.remove(frame);
+	}
+
+	public FrameTableEntry selectVictim()
+	{
+		FrameTableEntry victim = null;
+		if(a1in.size() > inLimit)
+		{
+			victim = a1in.victim();
+		}
+		if(victim == null)
+		{
+			victim = am.victim();
+		}
+		if(victim == null)
+		{
+			victim = a1in.victim();
+		}
+		return victim;
+	}
+}
@@ -0,0 +1,117 @@
+package osp.Memory;
+
+import java.util.*;
+
+/**
+   Adaptive Replacement Cache. Resident frames are split between T1
+   (pages seen once recently) and T2 (pages seen at least twice). The
+   ghost lists B1 and B2 remember pages recently evicted from T1 and T2;
+   a fault on a ghost page shifts the target size p of T1 towards
+   whichever list would have kept that page.
+*/
+class ARCPolicy implements ReplacementPolicy
+{
+	private int capacity;			// Number of frames, c in the ARC paper
+	private int target = 0;			// Target size of T1, p in the ARC paper
+	private FrameList t1 = new FrameList();
+	private FrameList t2 = new FrameList();
+	private LinkedHashSet<PageTableEntry> b1 = new LinkedHashSet<PageTableEntry>();
+	private LinkedHashSet<PageTableEntry> b2 = new LinkedHashSet<PageTableEntry>();
+
+	ARCPolicy(int capacity)
+	{
+		this.capacity = capacity;
+	}
+
+	public void frameLoaded(FrameTableEntry frame)
+	{
+		PageTableEntry page = frame.getPage();
+		if(b1.remove(page))
+		{
+			target = Math.min(capacity, target + Math.max(1, b2.size() / Math.max(1, b1.size())));
+			t2.moveToFront(frame);
+		}
+		else if(b2.remove(page))
+		{
+			target = Math.max(0, target - Math.max(1, b1.size() / Math.max(1, b2.size())));
+			t2.moveToFront(frame);
+		}
+		else
+		{
+			t1.moveToFront(frame);
+		}
+		trimGhosts();
+	}
+
+	public void frameReferenced(FrameTableEntry frame)
+	{
+		if(t1.contains(frame) || t2.contains(frame))
+		{
+			t2.moveToFront(frame);
+		}
+	}
+
+	public void frameEvicted(FrameTableEntry frame)
+	{
+		if(t1.contains(frame))
+		{
+			t1.remove(frame);
+			b1.add(frame.getPage());
+		}
+		else if(t2.contains(frame))
+		{
+			t2.remove(frame);
+			b2.add(frame.getPage());
+		}
+		trimGhosts();
+	}
+
+	public void frameReleased(FrameTableEntry frame)
+	{
+		t1.remove(frame);
+		t2.remove(frame);
+	}
+
+	public FrameTableEntry selectVictim()
+	{
+		FrameTableEntry victim = null;
+		if(t1.size() > 0 && t1.size() > target)
+		{
+			victim = t1.victim();
+		}
+		if(victim == null)
+		{
+			victim = t2.victim();
+		}
+		if(victim == null)
+		{
+			victim = t1.victim();
+		}
+		return victim;
+	}
+
+	// Keeps |T1| + |B1| <= c and the whole directory <= 2c
+	private void trimGhosts()
+	{
+		while(t1.size() + b1.size() > capacity && !b1.isEmpty())
+		{
+			removeOldest(b1);
+		}
+		while(t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity)
+		{
+			if(!b2.isEmpty())
+				removeOldest(b2);
+			else if(!b1.isEmpty())
+				removeOldest(b1);
+			else
+				break;
+		}
+	}
+
+	private static void removeOldest(LinkedHashSet<PageTableEntry> ghosts)
+	{
+		Iterator<PageTableEntry> it = ghosts.iterator();
+		it.next();
+		it.remove();
+	}
+}
@@ -0,0 +1,34 @@
+package osp.Memory;
+
+/**
+   First-in first-out replacement: the page that has been in memory the
+   longest is evicted, no matter how often it is used.
+*/
+class FIFOPolicy implements ReplacementPolicy
+{
+	private FrameList queue = new FrameList();	// Frames in order of arrival
+
+	public void frameLoaded(FrameTableEntry frame)
+	{
+		queue.moveToFront(frame);
+	}
+
+	public void frameReferenced(FrameTableEntry frame)
+	{
+	}
+
+	public void frameEvicted(FrameTableEntry frame)
+	{
+		queue.remove(frame);
+	}
+
+	public void frameReleased(FrameTableEntry frame)
+	{
+		queue.remove(frame);
+	}
+
+	public FrameTableEntry selectVictim()
+	{
+		return queue.victim();
+	}
+}
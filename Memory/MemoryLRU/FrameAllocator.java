@@ -0,0 +1,139 @@
+package osp.Memory;
+
+import java.util.*;
+import osp.IFLModules.*;
+import osp.Hardware.*;
+
+/**
+   Page-fault-frequency frame allocation. Every task gets a frame quota
+   that follows its fault rate: a fault that comes sooner than
+   lowerInterval ticks after the previous one raises the quota, a fault
+   later than upperInterval lowers it. When memory runs out, victims are
+   taken from the task furthest over its quota before the global
+   replacement policy is asked.
+
+   Load control: when the quotas of all active tasks add up to more than
+   the frame table, the task with the largest quota is deactivated. Its
+   quota no longer counts, its frames become preferred victims, and its
+   threads wait on the page table's reactivation event at their next
+   page fault until the other tasks leave enough room.
+*/
+class FrameAllocator
+{
+	static boolean enabled;			// Set from osp.memory.pff in MMU.init()
+	static long lowerInterval;		// Faults closer than this grow the quota
+	static long upperInterval;		// Faults further apart than this shrink the quota
+	static int initialQuota;		// Quota of a new task
+	static int deactivations = 0;	// Times load control deactivated a task
+
+	private static ArrayList<PageTable> tables = new ArrayList<PageTable>();	// Page tables of live tasks
+
+	static void register(PageTable table)
+	{
+		table.quota = initialQuota;
+		table.lastFaultTime = HClock.get();
+		tables.add(table);
+		balance();
+	}
+
+	static void unregister(PageTable table)
+	{
+		tables.remove(table);
+		if(table.deactivated)
+		{
+			reactivate(table);
+		}
+		balance();
+	}
+
+	// Adjusts the quota of the faulting task from its fault interval
+	static void recordFault(PageTable table)
+	{
+		long now = HClock.get();
+		long interval = now - table.lastFaultTime;
+		table.lastFaultTime = now;
+		if(interval < lowerInterval)
+		{
+			table.quota = Math.min(MMU.getFrameTableSize(), table.quota + 1);
+		}
+		else if(interval > upperInterval)
+		{
+			table.quota = Math.max(1, table.quota - 1);
+		}
+		balance();
+	}
+
+	/**
+	   Least recently referenced evictable frame of the task that holds
+	   the most frames beyond its quota, or null if no task is over quota.
+	*/
+	static FrameTableEntry selectVictim()
+	{
+		PageTable worst = null;
+		int worstExcess = 0;
+		for(int i = 0; i < tables.size(); i++)
+		{
+			PageTable table = tables.get(i);
+			int excess = table.getResidentSetSize() - (table.deactivated ? 0 : table.quota);
+			if(excess > worstExcess)
+			{
+				worst = table;
+				worstExcess = excess;
+			}
+		}
+		return worst == null ? null : worst.oldestEvictableFrame();
+	}
+
+	// Deactivates tasks while demand exceeds memory, then lets waiting tasks back in
+	private static void balance()
+	{
+		int frames = MMU.getFrameTableSize();
+		int demand = 0;
+		int active = 0;
+		for(int i = 0; i < tables.size(); i++)
+		{
+			PageTable table = tables.get(i);
+			if(!table.deactivated)
+			{
+				demand += table.quota;
+				active++;
+			}
+		}
+
+		// Always leave at least one task running
+		while(demand > frames && active > 1)
+		{
+			PageTable largest = null;
+			for(int i = 0; i < tables.size(); i++)
+			{
+				PageTable table = tables.get(i);
+				if(!table.deactivated && (largest == null || table.quota > largest.quota))
+				{
+					largest = table;
+				}
+			}
+			largest.deactivated = true;
+			demand -= largest.quota;
+			active--;
+			deactivations++;
+		}
+
+		// Oldest waiting tasks first
+		for(int i = 0; i < tables.size(); i++)
+		{
+			PageTable table = tables.get(i);
+			if(table.deactivated && (demand + table.quota <= frames || active == 0))
+			{
+				reactivate(table);
+				demand += table.quota;
+				active++;
+			}
+		}
+	}
+
+	private static void reactivate(PageTable table)
+	{
+		table.deactivated = false;
+		table.reactivation.notifyThreads();
+	}
+}
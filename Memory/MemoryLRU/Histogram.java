@@ -0,0 +1,100 @@
+package osp.Memory;
+
+/**
+   Histogram of non-negative long values with log-linear buckets in the
+   style of HdrHistogram: every power of two is split into SUB_BUCKETS
+   equal buckets, so any recorded value is known to within 1/SUB_BUCKETS
+   of itself. All storage is allocated up front and record() does no
+   allocation, which keeps it cheap enough for the page fault path.
+*/
+class Histogram
+{
+	static final int SUB_BITS = 3;
+	static final int SUB_BUCKETS = 1 << SUB_BITS; // Buckets per power of two
+
+	private long[] buckets = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+	private long count = 0;
+	private long sum = 0;
+	private long min = Long.MAX_VALUE;
+	private long max = 0;
+
+	void record(long value)
+	{
+		if(value < 0)
+		{
+			value = 0;
+		}
+		buckets[bucketOf(value)]++;
+		count++;
+		sum += value;
+		if(value < min)
+			min = value;
+		if(value > max)
+			max = value;
+	}
+
+	long count()
+	{
+		return count;
+	}
+
+	long min()
+	{
+		return count == 0 ? 0 : min;
+	}
+
+	long max()
+	{
+		return max;
+	}
+
+	double mean()
+	{
+		return count == 0 ? 0.0 : (double)sum / count;
+	}
+
+	// Smallest bucket bound below which the given percentage of values lie
+	long percentile(double percent)
+	{
+		if(count == 0)
+		{
+			return 0;
+		}
+		long rank = (long)Math.ceil(percent / 100.0 * count);
+		long seen = 0;
+		for(int i = 0; i < buckets.length; i++)
+		{
+			seen += buckets[i];
+			if(seen >= Math.max(1, rank))
+			{
+				return Math.min(max, upperBound(i));
+			}
+		}
+		return max;
+	}
+
+	// Values below SUB_BUCKETS get a bucket each; above that, the top
+	// SUB_BITS + 1 bits pick the bucket
+	private static int bucketOf(long value)
+	{
+		if(value < SUB_BUCKETS)
+		{
+			return (int)value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		int sub = (int)(value >>> magnitude) & (SUB_BUCKETS - 1);
+		return (magnitude + 1) * SUB_BUCKETS + sub;
+	}
+
+	// Largest value that falls into the bucket
+	private static long upperBound(int bucket)
+	{
+		if(bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		int magnitude = bucket / SUB_BUCKETS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << magnitude) - 1;
+	}
+}
@@ -0,0 +1,49 @@
+package osp.Memory;
+
+/**
+   Least frequently used replacement. Each frame counts the references to
+   its page since the page was loaded; the frame with the lowest count is
+   evicted, and ties go to the page referenced longest ago.
+*/
+class LFUPolicy implements ReplacementPolicy
+{
+	public void frameLoaded(FrameTableEntry frame)
+	{
+		frame.referenceCount = 1;
+	}
+
+	public void frameReferenced(FrameTableEntry frame)
+	{
+		frame.referenceCount++;
+	}
+
+	public void frameEvicted(FrameTableEntry frame)
+	{
+		frame.referenceCount = 0;
+	}
+
+	public void frameReleased(FrameTableEntry frame)
+	{
+		frame.referenceCount = 0;
+	}
+
+	public FrameTableEntry selectVictim()
+	{
+		FrameTableEntry victim = null;
+		for(int i = 0; i < MMU.getFrameTableSize(); i++)
+		{
+			FrameTableEntry frame = MMU.getFrame(i);
+			if(frame.getPage() == null || !frame.isEvictable())
+			{
+				continue;
+			}
+			if(victim == null
+				|| frame.referenceCount < victim.referenceCount
+				|| (frame.referenceCount == victim.referenceCount && frame.lastReference < victim.lastReference))
+			{
+				victim = frame;
+			}
+		}
+		return victim;
+	}
+}
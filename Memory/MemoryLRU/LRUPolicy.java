@@ -0,0 +1,35 @@
+package osp.Memory;
+
+/**
+   Least recently used replacement. Every reference moves the frame to the
+   head of the list, so the victim is found at the tail in O(1).
+*/
+class LRUPolicy implements ReplacementPolicy
+{
+	private FrameList recency = new FrameList();	// Frames from most to least recently used
+
+	public void frameLoaded(FrameTableEntry frame)
+	{
+		recency.moveToFront(frame);
+	}
+
+	public void frameReferenced(FrameTableEntry frame)
+	{
+		recency.moveToFront(frame);
+	}
+
+	public void frameEvicted(FrameTableEntry frame)
+	{
+		recency.remove(frame);
+	}
+
+	public void frameReleased(FrameTableEntry frame)
+	{
+		recency.remove(frame);
+	}
+
+	public FrameTableEntry selectVictim()
+	{
+		return recency.victim();
+	}
+}
@@ -0,0 +1,102 @@
+package osp.Memory;
+
+import java.util.*;
+import osp.IFLModules.*;
+import osp.Hardware.*;
+import osp.Threads.*;
+import osp.Utilities.*;
+
+/**
+   Page-out daemon that writes dirty frames to their task's swap file
+   before the replacement policy picks them, so that most victims are
+   already clean when a page fault needs a frame and the faulting thread
+   only has to wait for the swap-in.
+
+   Each time it is unleashed it cleans up to batchSize of the least
+   recently referenced dirty frames that are neither reserved nor locked.
+   OSP charges the writes to the thread that happens to be running,
+   which is blocked until they complete; that time is recorded in the
+   cleanerStall histogram of MemoryMetrics.
+*/
+class PageCleaner implements DaemonInterface
+{
+	private int batchSize;	// Maximum number of frames written per run
+
+	PageCleaner(int batchSize)
+	{
+		this.batchSize = batchSize;
+	}
+
+	public void unleash(ThreadCB thread)
+	{
+		// The writes are charged to the running thread, so there must be one
+		if(thread == null || thread.getStatus() == GlobalVariables.ThreadKill)
+		{
+			return;
+		}
+
+		FrameTableEntry[] candidates = oldestDirtyFrames();
+		for(int i = 0; i < candidates.length; i++)
+		{
+			clean(candidates[i], thread);
+			if(thread.getStatus() == GlobalVariables.ThreadKill)
+			{
+				return;
+			}
+		}
+	}
+
+	// Up to batchSize dirty, evictable frames, least recently referenced first
+	private FrameTableEntry[] oldestDirtyFrames()
+	{
+		ArrayList<FrameTableEntry> dirty = new ArrayList<FrameTableEntry>();
+		for(int i = 0; i < MMU.getFrameTableSize(); i++)
+		{
+			FrameTableEntry frame = MMU.getFrame(i);
+			if(frame.getPage() != null && frame.isDirty() && frame.isEvictable())
+			{
+				dirty.add(frame);
+			}
+		}
+		Collections.sort(dirty, new Comparator<FrameTableEntry>() {
+			public int compare(FrameTableEntry a, FrameTableEntry b)
+			{
+				return a.lastReference < b.lastReference ? -1 : (a.lastReference > b.lastReference ? 1 : 0);
+			}
+		});
+		int n = Math.min(batchSize, dirty.size());
+		return dirty.subList(0, n).toArray(new FrameTableEntry[n]);
+	}
+
+	private void clean(FrameTableEntry frame, ThreadCB thread)
+	{
+		// Earlier writes blocked, so the frame may since have been freed, evicted, reserved or cleaned
+		if(frame.getPage() == null || !frame.isDirty() || !frame.isEvictable())
+		{
+			return;
+		}
+		PageTableEntry page = frame.getPage();
+
+		// Lock the frame so it is not evicted while the write is in progress,
+		// and clear the dirty bit first so a write during the I/O dirties it again
+		frame.incrementLockCount();
+		frame.setDirty(false);
+		long start = HClock.get();
+		boolean written = PageFaultHandler.SwapOut(thread, frame, true);
+		MemoryMetrics.cleanerStall.record(HClock.get() - start);
+		frame.decrementLockCount();
+
+		if(!written)
+		{
+			frame.setDirty(true);	// No swap file could be created for the task
+			return;
+		}
+
+		if(thread.getStatus() == GlobalVariables.ThreadKill && frame.getPage() == page)
+		{
+			frame.setDirty(true);	// The write may not have completed
+			return;
+		}
+		PageFaultHandler.asyncWriteBacks++;
+	}
+}
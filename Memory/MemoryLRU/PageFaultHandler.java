@@ -73,19 +73,24 @@ public class PageFaultHandler extends IflPageFaultHandler
 
         @OSPProject Memory
     */
-	static int countFault;
     public static int do_handlePageFault(ThreadCB thread, 
 					 int referenceType,
 					 PageTableEntry page)
     {
         // your code goes here
-		countFault++;
-		
 		TaskCB Task = thread.getTask();
     	if(page.isValid())
     	{
     		return FAILURE;
     	}
+    	long start = HClock.get();
+    	boolean dirtyVictim = false;
+    	MemoryMetrics.faults++;
+    	Task.getPageTable().faults++;
+    	if(FrameAllocator.enabled)
+    	{
+    		FrameAllocator.recordFault(Task.getPageTable());
+    	}
     	    	
     	FrameTableEntry newFrame = null;
     	
@@ -104,9 +109,26 @@ public class PageFaultHandler extends IflPageFaultHandler
     	if(newFrame.getPage() != null)
     	{
     		PageTableEntry newPage = newFrame.getPage();
-    		if(newFrame.isDirty())
+    		if(newFrame.isDirty() || newFrame.sharers != null)
     		{
-    			SwapOut(thread, newFrame);
+    			// A shared victim is also written for every other task mapping it
+    			boolean written = !newFrame.isDirty() || swapOutCluster(thread, newFrame);
+    			if(written && thread.getStatus() != GlobalVariables.ThreadKill)
+    			{
+    				written = CopyOnWrite.writeBack(thread, newFrame);
+    			}
+    			if(!written)
+    			{
+    				// No room on the swap device for a task of the victim, so the victim stays
+    				newFrame.setUnreserved(Task);
+    				page.setValidatingThread(null);
+    				page.notifyThreads();
+    				event.notifyThreads();
+    				ThreadCB.dispatch();
+    				return NotEnoughMemory;
+    			}
+    			syncWriteBacks++;
+    			dirtyVictim = true;
     			
     			if(thread.getStatus() == GlobalVariables.ThreadKill)
     			{
@@ -116,11 +138,17 @@ public class PageFaultHandler extends IflPageFaultHandler
     				return FAILURE;
     			}
     			newFrame.setDirty(false);
+    			MemoryMetrics.dirtyEvictions++;
+    		}
+    		else
+    		{
+    			MemoryMetrics.cleanEvictions++;
+    		}
+    		// The victim's task may have exited during the write and released the page already
+    		if(newFrame.getPage() != null)
+    		{
+    			evict(newFrame);
     		}
-    		newFrame.setReferenced(false);
-    		newFrame.setPage(null);
-    		newPage.setValid(false);
-    		newPage.setFrame(null);
     	}
     	
     	page.setFrame(newFrame);
@@ -132,8 +160,14 @@ public class PageFaultHandler extends IflPageFaultHandler
     			if(newFrame.getPage().getTask() == thread.getTask())
     			{
 	    			newFrame.setPage(null);
+	    			Task.getPageTable().removeResidentFrame(newFrame);
 	    		}
     		}
+    		if(newFrame.getReserved() == Task)
+    		{
+    			newFrame.setUnreserved(Task);
+    		}
+    		freeFrames.moveToFront(newFrame);	// Nobody got the frame, so it is free again
     		page.notifyThreads();
     		page.setValidatingThread(null);
     		page.setFrame(null);
@@ -144,6 +178,9 @@ public class PageFaultHandler extends IflPageFaultHandler
 
     	newFrame.setPage(page);
     	page.setValid(true);
+    	page.getTask().getPageTable().addResidentFrame(newFrame);
+    	newFrame.lastReference = HClock.get();
+    	policy.frameLoaded(newFrame);
     	if(newFrame.getReserved() == Task)
     	{
     		newFrame.setUnreserved(Task);    		
@@ -152,72 +189,426 @@ public class PageFaultHandler extends IflPageFaultHandler
 
     	page.setValidatingThread(null);
     	page.notifyThreads();
+
+    	// The page is valid, so the fault is served; read-ahead I/O below is not part of it
+    	long serviceTime = HClock.get() - start;
+    	MemoryMetrics.faultService.record(serviceTime);
+    	if(dirtyVictim)
+    	{
+    		MemoryMetrics.dirtyFaultService.record(serviceTime);
+    	}
+
+    	readAhead(thread, page);
+    	if(thread.getStatus() == ThreadKill)
+    	{
+    		event.notifyThreads();
+    		ThreadCB.dispatch();
+    		return FAILURE;
+    	}
+
     	event.notifyThreads();
+    	if(freeFrames.size() < lowWatermark)
+    	{
+    		refillFreeFrames();
+    	}
     	ThreadCB.dispatch();
-		MyOut.print("OSP.memory","Page Fault Count : "+ countFault);
     	return SUCCESS;
 
     }
 
+	static ReplacementPolicy policy;	// Page replacement algorithm, chosen in MMU.init()
+	static FrameList freeFrames;		// Frames holding no page, filled in MMU.init()
+	static int lowWatermark;			// Refill the free frames when fewer than this are left
+	static int highWatermark;			// Number of free frames a refill aims for
+	static int syncWriteBacks;			// Dirty victims written out by the faulting thread
+	static int asyncWriteBacks;			// Dirty frames written out ahead of time by the PageCleaner
+	static int maxReadAhead;			// Upper bound of the read-ahead window, 0 disables read-ahead
+	static int prefetchIssued;			// Pages brought in by read-ahead
+	static int prefetchHits;			// Prefetched pages referenced before eviction
+	static int prefetchWasted;			// Prefetched pages evicted without being referenced
+	static int swapCluster;				// Pages written together with a dirty victim, 1 disables clustering
+	static int clusterWrites;			// Neighbours of dirty victims written by clustering
+	static boolean lazySwap;			// Set from osp.tasks.lazySwap in MMU.init()
+
+	// Number of dirty victims the faulting thread had to swap out itself
+	public static int getSyncWriteBacks()
+	{
+		return syncWriteBacks;
+	}
+
+	// Number of dirty frames the page cleaner wrote out before eviction
+	public static int getAsyncWriteBacks()
+	{
+		return asyncWriteBacks;
+	}
+
+	// Fraction of prefetched pages that were referenced before eviction
+	public static double getPrefetchHitRatio()
+	{
+		return prefetchIssued == 0 ? 0.0 : (double)prefetchHits / prefetchIssued;
+	}
+
+	// Number of prefetched pages evicted without ever being referenced
+	public static int getPrefetchWasted()
+	{
+		return prefetchWasted;
+	}
+
+	// Number of dirty pages written out along with a victim by swap-out clustering
+	public static int getClusterWrites()
+	{
+		return clusterWrites;
+	}
+
 	private static FrameTableEntry GetNewFrame()
     {
-    	FrameTableEntry newFrame = null;
-		FrameTableEntry newFrameMax = null;
-		long maxTillNow=-1;
-    	for(int i = 0; i < MMU.getFrameTableSize(); i++)
+    	FrameTableEntry newFrame = freeFrames.victim();
+    	if(newFrame != null)
     	{
-    		newFrame = MMU.getFrame(i);
-    		if((newFrame.getPage() == null) && (!newFrame.isReserved()) && (newFrame.getLockCount() == 0))
-    		{
-    			return newFrame;
-    		}
+    		freeFrames.remove(newFrame);
+    		return newFrame;
     	}
-    	
-    	for(int i = 0; i < MMU.getFrameTableSize(); i++)
+
+		// Take from tasks holding more than their quota before anyone else
+		if(FrameAllocator.enabled)
+		{
+			newFrame = FrameAllocator.selectVictim();
+			if(newFrame != null)
+			{
+				return newFrame;
+			}
+		}
+
+		// No empty frame, so let the replacement policy pick a victim
+		return policy.selectVictim();
+    }
+
+	// Disassociates the victim page from its frame, which must be clean and written for all sharers
+	static void evict(FrameTableEntry frame)
+	{
+		if(frame.sharers != null)
+		{
+			CopyOnWrite.detach(frame);
+		}
+		PageTableEntry victimPage = frame.getPage();
+		if(victimPage.prefetched)
+		{
+			// Read too far ahead, so shrink the window of the owning task
+			victimPage.prefetched = false;
+			prefetchWasted++;
+			PageTable table = victimPage.getTask().getPageTable();
+			table.readAheadWindow = table.readAheadWindow / 2;
+		}
+		frame.setReferenced(false);
+		policy.frameEvicted(frame);
+		if(MMU.tlb != null)
+		{
+			MMU.tlb.invalidate(victimPage);
+		}
+		frame.setPage(null);
+		victimPage.getTask().getPageTable().removeResidentFrame(frame);
+		victimPage.setValid(false);
+		victimPage.setFrame(null);
+	}
+
+	/**
+	   Works like a page-out daemon: evicts clean victims chosen by the
+	   policy into the free frames until the high watermark is reached,
+	   so later faults find a frame without evicting synchronously.
+	   Stops at the first dirty or shared victim, since freeing it would
+	   need a swap-out.
+	*/
+	static void refillFreeFrames()
+	{
+		while(freeFrames.size() < highWatermark)
+		{
+			FrameTableEntry victim = policy.selectVictim();
+			if(victim == null || victim.isDirty() || victim.sharers != null)
+			{
+				return;
+			}
+			evict(victim);
+			MemoryMetrics.cleanEvictions++;
+			freeFrames.moveToFront(victim);
+		}
+	}
+
+	// Records a reference to a resident frame
+	static void touch(FrameTableEntry frame)
+	{
+		frame.lastReference = HClock.get();
+		policy.frameReferenced(frame);
+
+		PageTableEntry page = frame.getPage();
+		if(page.prefetched)
+		{
+			// Read-ahead paid off, so let the window of the owning task grow
+			page.prefetched = false;
+			prefetchHits++;
+			PageTable table = page.getTask().getPageTable();
+			table.readAheadWindow = Math.min(maxReadAhead, table.readAheadWindow + 1);
+		}
+	}
+
+	/**
+	   Swap-out clustering. Writes the dirty victim together with up to
+	   swapCluster - 1 dirty, evictable pages of the same task next to it
+	   in the address space, lowest page first, so the writes go to
+	   consecutive blocks of the swap file. The neighbours are cleaned
+	   and, while the free frames are below the high watermark, evicted
+	   into them, so one fault frees several frames. OSP moves one page
+	   per IORB, so the cluster is written back to back rather than as a
+	   single request.
+
+	   @return false if the victim could not be written
+	*/
+	static boolean swapOutCluster(ThreadCB thread, FrameTableEntry victim)
+	{
+		PageTableEntry victimPage = victim.getPage();
+		PageTable table = victimPage.getTask().getPageTable();
+		int first = victimPage.getID();
+		int last = first;
+		while(last - first + 1 < swapCluster)
+		{
+			if(clusterable(table, last + 1))
+				last++;
+			else if(clusterable(table, first - 1))
+				first--;
+			else
+				break;
+		}
+
+		for(int i = first; i <= last; i++)
+		{
+			if(i == victimPage.getID())
+			{
+				if(!SwapOut(thread, victim))
+				{
+					return false;
+				}
+			}
+			else if(clusterable(table, i))	// May have changed during the earlier writes
+			{
+				writeNeighbour(thread, table.pages[i].getFrame());
+			}
+			if(thread.getStatus() == ThreadKill)
+			{
+				return true;
+			}
+		}
+		return true;
+	}
+
+	// Whether the page exists, is resident and dirty, and its frame can be evicted
+	private static boolean clusterable(PageTable table, int pageNumber)
+	{
+		if(pageNumber < 0 || pageNumber >= table.pages.length)
+		{
+			return false;
+		}
+		PageTableEntry page = table.pages[pageNumber];
+		if(page == null || !page.isValid() || page.getValidatingThread() != null)
+		{
+			return false;
+		}
+		FrameTableEntry frame = page.getFrame();
+		return frame.getPage() == page && frame.isDirty() && frame.isEvictable() && frame.sharers == null;
+	}
+
+	private static void writeNeighbour(ThreadCB thread, FrameTableEntry frame)
+	{
+		PageTableEntry page = frame.getPage();
+
+		// Same protocol as the page cleaner: locked during the write, dirty bit cleared first
+		frame.incrementLockCount();
+		frame.setDirty(false);
+		boolean written = SwapOut(thread, frame, true);
+		frame.decrementLockCount();
+		if(!written || (thread.getStatus() == ThreadKill && frame.getPage() == page))
+		{
+			frame.setDirty(true);
+			return;
+		}
+		clusterWrites++;
+
+		// Still clean and unused, so it can go straight to the free frames
+		if(frame.getPage() == page && !frame.isDirty() && frame.isEvictable() && freeFrames.size() < highWatermark)
+		{
+			evict(frame);
+			MemoryMetrics.cleanEvictions++;
+			freeFrames.moveToFront(frame);
+		}
+	}
+
+	/**
+	   Sequential read-ahead. If the fault on page directly follows the
+	   previous fault of the same task, the next readAheadWindow pages are
+	   swapped in as well, using free frames only, so that a sequential
+	   walk takes one fault per window instead of one per page. The window
+	   grows when prefetched pages get referenced and shrinks when they are
+	   evicted unused (see touch() and evict()).
+
+	   Only pages that are on swap are prefetched; a page that was never
+	   swapped out costs no I/O to fault in, and its entry is not created
+	   in a lazy page table. The reads are synchronous: the faulting
+	   thread waits for the whole window, so read-ahead saves faults but
+	   not the I/O wait of that thread.
+	*/
+	static void readAhead(ThreadCB thread, PageTableEntry page)
+	{
+		PageTable table = page.getTask().getPageTable();
+		int pageNumber = page.getID();
+		boolean sequential = (pageNumber == table.lastFaultPage + 1);
+		table.lastFaultPage = pageNumber;
+		if(maxReadAhead == 0 || !sequential)
+		{
+			return;
+		}
+
+		table.readAheadWindow = Math.max(1, table.readAheadWindow);
+		int last = Math.min(table.pages.length - 1, pageNumber + table.readAheadWindow);
+		for(int i = pageNumber + 1; i <= last; i++)
+		{
+			PageTableEntry next = table.pages[i];
+			if(next == null || !next.swapped || next.isValid() || next.getValidatingThread() != null)
+			{
+				continue;
+			}
+			FrameTableEntry frame = freeFrames.victim();
+			if(frame == null)
+			{
+				return;		// Never evict for a page nobody asked for yet
+			}
+			freeFrames.remove(frame);
+			frame.setReserved(thread.getTask());
+			next.setValidatingThread(thread);
+			next.setFrame(frame);
+			SwapIn(thread, next, true);
+
+			if(frame.getReserved() == thread.getTask())
+			{
+				frame.setUnreserved(thread.getTask());
+			}
+			next.setValidatingThread(null);
+			if(thread.getStatus() == ThreadKill)
+			{
+				next.setFrame(null);
+				freeFrames.moveToFront(frame);
+				next.notifyThreads();
+				return;
+			}
+			frame.setPage(next);
+			next.setValid(true);
+			table.addResidentFrame(frame);
+			next.prefetched = true;
+			frame.lastReference = HClock.get();
+			policy.frameLoaded(frame);
+			next.notifyThreads();
+			prefetchIssued++;
+			table.lastFaultPage = i;	// A fault on the page after the window is still sequential
+		}
+	}
+
+    /**
+       Reads the page from its task's swap file. A page that was never
+       swapped out has no contents yet, so it is zero-filled in its frame
+       and the fault completes without an IORB; so does a copy-on-write
+       fault, which copies the page from memory.
+    */
+    public static void SwapIn(ThreadCB thread, PageTableEntry page)
+    {
+    	SwapIn(thread, page, false);
+    }
+
+    // As SwapIn(); background reads (read-ahead) give way to faults in the SwapScheduler
+    static void SwapIn(ThreadCB thread, PageTableEntry page, boolean background)
+    {
+    	TaskCB newTask = page.getTask();
+    	if(page.copySource != null)
     	{
-    		newFrame = MMU.getFrame(i);
-    		if((!newFrame.isDirty()) && (!newFrame.isReserved()) && (newFrame.getLockCount() == 0))
-    		{
-    			return newFrame; 
-    		}
+    		return;		// Copy-on-write fault, the page is copied from the shared frame
     	}
-
-    	for(int i = 0; i < MMU.getFrameTableSize(); i++)
+    	if(!page.swapped || newTask.getSwapFile() == null)
     	{
-    		newFrame = MMU.getFrame(i);
-    		if((!newFrame.isReserved()) && (newFrame.getLockCount() == 0))
-    		{
-    			return newFrame; 
-    		}
+    		MemoryMetrics.zeroFills++;
+    		return;
     	}
-		
-		for(int i = 0; i < MMU.getFrameTableSize(); i++)
+    	if(!SwapScheduler.begin(thread, page, background))
     	{
-    		newFrame = MMU.getFrame(i);
-			PageTableEntry newPage = newFrame.getPage();
-			if(Math.abs(HClock.get() - newPage.reftimer) > maxTillNow){
-				newFrameMax = newFrame;
-				maxTillNow= Math.abs(HClock.get() - newPage.reftimer);
-			}	
+    		return;		// Killed while waiting for the swap device
     	}
-		return newFrameMax;
-    }
-    
-	
-    public static void SwapIn(ThreadCB thread, PageTableEntry page)
-    {
-    	TaskCB newTask = page.getTask();
+    	MemoryMetrics.swapIns++;
+    	newTask.getPageTable().swapIns++;
     	newTask.getSwapFile().read(page.getID(), page, thread);
+    	SwapScheduler.end();
     }
 	
     
-    public static void SwapOut(ThreadCB thread, FrameTableEntry frame)
+    /**
+       Writes the page in the frame to its task's swap file, creating the
+       file first if the task does not have one.
+
+       @return false if the swap file could not be created
+    */
+    public static boolean SwapOut(ThreadCB thread, FrameTableEntry frame)
+    {
+    	return SwapOut(thread, frame, false);
+    }
+
+    // As SwapOut(); background writes (page cleaner, clusters) give way to faults in the SwapScheduler
+    static boolean SwapOut(ThreadCB thread, FrameTableEntry frame, boolean background)
+    {
+    	return swapOutPage(thread, frame.getPage(), background);
+    }
+
+    // Writes the page, which must be resident, to its task's swap file
+    static boolean swapOutPage(ThreadCB thread, PageTableEntry newPage, boolean background)
     {
-		PageTableEntry newPage = frame.getPage();
     	TaskCB newTask = newPage.getTask();
-    	newTask.getSwapFile().write(newPage.getID(), newPage, thread);
+    	OpenFile swapFile = swapFileOf(newTask);
+    	if(swapFile == null)
+    	{
+    		return false;
+    	}
+    	if(!SwapScheduler.begin(thread, newPage, background))
+    	{
+    		return true;	// Killed while waiting for the swap device, the caller sees ThreadKill
+    	}
+    	MemoryMetrics.swapOuts++;
+    	newTask.getPageTable().swapOuts++;
+    	newPage.swapped = true;
+    	swapFile.write(newPage.getID(), newPage, thread);
+    	SwapScheduler.end();
+    	return true;
     }
 
+	/**
+	   Returns the swap file of the task. TaskCB.do_create opens it unless
+	   osp.tasks.lazySwap is set; then it is created and opened here, at
+	   the task's first swap-out. Returns null if there is none.
+	*/
+	static OpenFile swapFileOf(TaskCB task)
+	{
+		OpenFile swapFile = task.getSwapFile();
+		if(swapFile != null || !lazySwap)
+		{
+			return swapFile;
+		}
+		String name = SwapDeviceMountPoint + task.getID();
+		if(FileSys.create(name, 1 << MMU.getVirtualAddressBits()) != SUCCESS)
+		{
+			return null;
+		}
+		swapFile = OpenFile.open(name, task);
+		if(swapFile == null)
+		{
+			FileSys.delete(name);
+			return null;
+		}
+		task.setSwapFile(swapFile);
+		return swapFile;
+	}
+
 
     /*
        Feel free to add methods/fields to improve the readability of your code
@@ -14,6 +14,21 @@ import osp.Hardware.*;
 
 public class PageTable extends IflPageTable
 {
+	static boolean lazy;		// Create entries on first reference instead of in the constructor, set in MMU.init()
+	private FrameTableEntry residentHead;	// Frames holding pages of this task, linked through FrameTableEntry
+	private int residentCount = 0;			// Length of the resident list
+	int quota;					// Frames this task may hold under page-fault-frequency allocation
+	long lastFaultTime;			// HClock time of the last page fault of this task
+	boolean deactivated = false;	// Set by load control; threads wait on reactivation at their next fault
+	SystemEvent reactivation = new SystemEvent("TaskReactivated");
+	int lastFaultPage = -2;		// Page of the last fault, used to detect sequential access
+	int readAheadWindow = 0;	// Pages to prefetch on the next sequential fault
+	int faults = 0;				// Page faults of this task, for MemoryMetrics
+	int swapIns = 0;			// Pages of this task read from swap
+	int swapOuts = 0;			// Pages of this task written to swap
+	int peakResidentSet = 0;	// Largest resident set this task has had
+	int sharedEntries = 0;		// Entries mapping a frame copy-on-write
+
     /** 
 	The page table constructor. Must call
 	
@@ -27,15 +42,40 @@ public class PageTable extends IflPageTable
     {
         // your code goes here
 		super(ownerTask);
-		int numberOfPages = (int)Math.pow(2, MMU.getPageAddressBits());
+		int numberOfPages = 1 << MMU.getPageAddressBits();
     	pages = new PageTableEntry[numberOfPages];
-		for(int i = 0; i < numberOfPages; i++)
-    	{
-    		pages[i] = new PageTableEntry(this, i);
-    	}
-
+		if(FrameAllocator.enabled)
+		{
+			FrameAllocator.register(this);
+		}
+		MemoryMetrics.register(this);
+		if(!lazy)		// Otherwise entries are created by getEntry() on first use
+		{
+			for(int i = 0; i < numberOfPages; i++)
+	    	{
+	    		pages[i] = new PageTableEntry(this, i);
+	    	}
+		}
+		CopyOnWrite.tableCreated(this);
     }
 
+	/**
+	   Returns the entry of the given page. In lazy mode the pages array
+	   starts out empty and an entry is only created the first time its
+	   page is referenced, so a task that touches a few pages of a large
+	   address space pays for a few entries instead of all of them.
+	*/
+	PageTableEntry getEntry(int pageNumber)
+	{
+		PageTableEntry entry = pages[pageNumber];
+		if(entry == null)
+		{
+			entry = new PageTableEntry(this, pageNumber);
+			pages[pageNumber] = entry;
+		}
+		return entry;
+	}
+
     /**
        Frees up main memory occupied by the task.
        Then unreserves the freed pages, if necessary.
@@ -46,22 +86,92 @@ public class PageTable extends IflPageTable
     {
         // your code goes here
 		TaskCB task = getTask();
-		for(int i = 0; i < MMU.getFrameTableSize(); i++)
+		if(MMU.tlb != null)
+		{
+			MMU.tlb.invalidate(this);
+		}
+		// Shared frames stay with the remaining sharers; the last one frees them
+		CopyOnWrite.release(this);
+		// Only the frames on the resident list can hold pages of this task
+		FrameTableEntry tempFrameTableEntry = residentHead;
+		while(tempFrameTableEntry != null)
         {
-        	FrameTableEntry tempFrameTableEntry = MMU.getFrame(i);
-        	PageTableEntry tempPageTableEntry = tempFrameTableEntry.getPage();
-        	if(tempPageTableEntry != null && tempPageTableEntry.getTask() == task)
-        	{
-        		
-				tempFrameTableEntry.setPage(null);
-				tempFrameTableEntry.setDirty(false);
-				tempFrameTableEntry.setReferenced(false);
-				if(tempFrameTableEntry.getReserved() == task)
-        			tempFrameTableEntry.setUnreserved(task);
-        	}
+        	FrameTableEntry next = tempFrameTableEntry.residentNext;
+			PageFaultHandler.policy.frameReleased(tempFrameTableEntry);
+			tempFrameTableEntry.setPage(null);
+			tempFrameTableEntry.setDirty(false);
+			tempFrameTableEntry.setReferenced(false);
+			if(tempFrameTableEntry.getReserved() == task)
+        		tempFrameTableEntry.setUnreserved(task);
+			// A frame reserved by another task's fault is already promised to that fault
+			if(!tempFrameTableEntry.isReserved())
+				PageFaultHandler.freeFrames.moveToFront(tempFrameTableEntry);
+			tempFrameTableEntry.residentPrev = null;
+			tempFrameTableEntry.residentNext = null;
+			tempFrameTableEntry.residentOwner = null;
+			tempFrameTableEntry = next;
         }
+		residentHead = null;
+		residentCount = 0;
+		if(FrameAllocator.enabled)
+		{
+			FrameAllocator.unregister(this);
+		}
+		MemoryMetrics.unregister(this);
     }
 
+	// Number of frames currently holding pages of this task
+	public int getResidentSetSize()
+	{
+		return residentCount;
+	}
+
+	// Least recently referenced resident frame that is neither reserved nor locked, or null
+	FrameTableEntry oldestEvictableFrame()
+	{
+		FrameTableEntry oldest = null;
+		for(FrameTableEntry frame = residentHead; frame != null; frame = frame.residentNext)
+		{
+			if(frame.isEvictable() && (oldest == null || frame.lastReference < oldest.lastReference))
+			{
+				oldest = frame;
+			}
+		}
+		return oldest;
+	}
+
+	// Records that the frame now holds a page of this task
+	void addResidentFrame(FrameTableEntry frame)
+	{
+		frame.residentOwner = this;
+		frame.residentPrev = null;
+		frame.residentNext = residentHead;
+		if(residentHead != null)
+			residentHead.residentPrev = frame;
+		residentHead = frame;
+		residentCount++;
+		peakResidentSet = Math.max(peakResidentSet, residentCount);
+	}
+
+	// Records that the frame no longer holds a page of this task
+	void removeResidentFrame(FrameTableEntry frame)
+	{
+		if(frame.residentOwner != this)
+		{
+			return;
+		}
+		if(frame.residentPrev != null)
+			frame.residentPrev.residentNext = frame.residentNext;
+		else
+			residentHead = frame.residentNext;
+		if(frame.residentNext != null)
+			frame.residentNext.residentPrev = frame.residentPrev;
+		frame.residentPrev = null;
+		frame.residentNext = null;
+		frame.residentOwner = null;
+		residentCount--;
+	}
+
 
     /*
        Feel free to add methods/fields to improve the readability of your code
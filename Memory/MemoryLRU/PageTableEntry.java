@@ -26,12 +26,15 @@ public class PageTableEntry extends IflPageTableEntry
        @OSPProject Memory
     */
 	boolean pageFaulted= false;
-	static public long reftimer;
+	boolean prefetched = false;	// Brought in by read-ahead and not referenced since
+	boolean swapped = false;	// Written to swap at least once; until then the page is all zeros
+	boolean copyOnWrite = false;	// Maps a frame shared with other tasks; the first write copies it
+	FrameTableEntry copySource;	// Shared frame being copied by a copy-on-write fault, else null
+	int lockCount = 0;		// Locks taken through this entry, held on the frame it maps
     public PageTableEntry(PageTable ownerPageTable, int pageNumber)
     {
         // your code goes here
 		super(ownerPageTable,pageNumber);
-		reftimer = HClock.get();
     }
 
     /**
@@ -52,6 +55,16 @@ public class PageTableEntry extends IflPageTableEntry
     {
         // your code goes here
 		ThreadCB thread = iorb.getThread();
+		MemoryMetrics.locks++;
+		if(copyOnWrite && isValid() && iorb.getIOType() == GlobalVariables.FileRead)
+		{
+			// The device is going to write into the page, so it needs its own copy first
+			CopyOnWrite.fault(thread, this);
+			if(thread.getStatus() == GlobalVariables.ThreadKill)
+			{
+				return GlobalVariables.FAILURE;
+			}
+		}
 		if(!isValid()){
 			if(getValidatingThread() == null){
 				PageFaultHandler.handlePageFault(thread, GlobalVariables.MemoryLock, this);
@@ -59,8 +72,11 @@ public class PageTableEntry extends IflPageTableEntry
 			else{
 				if(getValidatingThread() != thread)
 	            {
-					
+					// Contended: another thread is already bringing the page in
+					MemoryMetrics.lockWaits++;
+					long start = HClock.get();
 	            	thread.suspend(this);
+	            	MemoryMetrics.lockWait.record(HClock.get() - start);
 	            	if(thread.getStatus() == GlobalVariables.ThreadKill)
 	                {
 	                	return GlobalVariables.FAILURE;
@@ -75,7 +91,12 @@ public class PageTableEntry extends IflPageTableEntry
 		}
 		else
 		{
+		if(frame.getLockCount() > 0)
+		{
+			MemoryMetrics.sharedLocks++;
+		}
 		frame.incrementLockCount();
+		lockCount++;
     	return GlobalVariables.SUCCESS;
 		}
     }
@@ -89,7 +110,16 @@ public class PageTableEntry extends IflPageTableEntry
     public void do_unlock()
     {
         // your code goes here
-		 getFrame().decrementLockCount();
+		// A copy-on-write fault moves the page's locks to its new frame, so they are on getFrame()
+		if(lockCount == 0)
+		{
+			return;
+		}
+		lockCount--;
+		if(getFrame() != null)
+		{
+			getFrame().decrementLockCount();
+		}
     }
 
 
@@ -0,0 +1,40 @@
+package osp.Memory;
+
+/**
+    A page replacement algorithm. The page fault handler tells the policy
+    whenever a frame is loaded, referenced, evicted or released, and asks
+    it for a victim when no empty frame is left. The policy is chosen once
+    in MMU.init() from the osp.memory.policy system property.
+
+    A victim must hold a page and must be neither reserved nor locked
+    (see FrameTableEntry.isEvictable()).
+*/
+public interface ReplacementPolicy
+{
+    /**
+       Called after a page has been brought into the frame.
+    */
+    void frameLoaded(FrameTableEntry frame);
+
+    /**
+       Called on every memory reference that hits the frame.
+    */
+    void frameReferenced(FrameTableEntry frame);
+
+    /**
+       Called when the frame's page is evicted to make room for another
+       page. The frame still holds the victim page.
+    */
+    void frameEvicted(FrameTableEntry frame);
+
+    /**
+       Called when the frame is freed because its task released its
+       memory. The frame still holds the page.
+    */
+    void frameReleased(FrameTableEntry frame);
+
+    /**
+       Returns the frame to evict, or null if every frame is held.
+    */
+    FrameTableEntry selectVictim();
+}
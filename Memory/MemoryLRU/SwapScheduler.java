@@ -0,0 +1,170 @@
+package osp.Memory;
+
+import java.util.*;
+import osp.IFLModules.*;
+import osp.Hardware.*;
+import osp.Threads.*;
+
+/**
+   Orders the paging I/O of PageFaultHandler on the swap device. Only
+   one swap read or write is outstanding at a time; a thread that wants
+   to swap while the device is busy queues here and waits on its own
+   event until it is its turn. When a transfer ends the next request is
+   chosen in this order:
+
+   - the oldest request older than the deadline, so nothing starves;
+   - otherwise only requests of faulting threads are considered while
+     there are any, so background write-backs (page cleaner, swap-out
+     clusters, read-ahead) never delay a fault;
+   - among those, C-LOOK picks the nearest position at or after the
+     head, wrapping to the lowest; SSTF picks the nearest either way.
+
+   A request's position is its block on the swap device: every task's
+   swap file is taken to be one address space long and laid out in task
+   ID order.
+*/
+class SwapScheduler
+{
+	static final int NONE = 0;
+	static final int CLOOK = 1;
+	static final int SSTF = 2;
+
+	static int mode = NONE;			// Set from osp.memory.swapScheduler in MMU.init()
+	static long deadline;			// Ticks a request may wait before it goes first
+	static long deadlineMisses = 0;	// Requests served because their deadline passed
+
+	private static ArrayList<Request> pending = new ArrayList<Request>();
+	private static boolean busy = false;	// A transfer is in progress
+	private static long head = 0;			// Position of the last transfer
+
+	private static class Request
+	{
+		ThreadCB thread;
+		long position;
+		boolean background;
+		long queued;
+		SystemEvent turn = new SystemEvent("SwapTurn");
+
+		Request(ThreadCB thread, long position, boolean background)
+		{
+			this.thread = thread;
+			this.position = position;
+			this.background = background;
+			this.queued = HClock.get();
+		}
+	}
+
+	static void reset(int newMode, long newDeadline)
+	{
+		mode = newMode;
+		deadline = newDeadline;
+		deadlineMisses = 0;
+		pending.clear();
+		busy = false;
+		head = 0;
+	}
+
+	/**
+	   Waits until the device is free for a transfer of the page.
+	   @return false if the thread was killed while waiting; the caller
+	   must then not start the transfer
+	*/
+	static boolean begin(ThreadCB thread, PageTableEntry page, boolean background)
+	{
+		if(mode == NONE)
+		{
+			return true;
+		}
+		long position = (long)page.getTask().getID() * (1L << MMU.getPageAddressBits()) + page.getID();
+		if(!busy)
+		{
+			busy = true;
+			head = position;
+			return true;
+		}
+
+		Request request = new Request(thread, position, background);
+		pending.add(request);
+		thread.suspend(request.turn);
+		MemoryMetrics.swapQueueWait.record(HClock.get() - request.queued);
+		if(thread.getStatus() == GlobalVariables.ThreadKill)
+		{
+			if(!pending.remove(request))
+			{
+				end();		// It was already its turn, pass it on
+			}
+			return false;
+		}
+		return true;
+	}
+
+	// Called when a transfer started after begin() has completed
+	static void end()
+	{
+		if(mode == NONE)
+		{
+			return;
+		}
+		Request next = choose();
+		if(next == null)
+		{
+			busy = false;
+			return;
+		}
+		pending.remove(next);
+		head = next.position;
+		next.turn.notifyThreads();
+	}
+
+	private static Request choose()
+	{
+		if(pending.isEmpty())
+		{
+			return null;
+		}
+
+		// The list is in arrival order, so the first late request is the oldest
+		long now = HClock.get();
+		Request first = pending.get(0);
+		if(now - first.queued >= deadline)
+		{
+			deadlineMisses++;
+			return first;
+		}
+
+		boolean faultsWaiting = false;
+		for(int i = 0; i < pending.size(); i++)
+		{
+			if(!pending.get(i).background)
+			{
+				faultsWaiting = true;
+				break;
+			}
+		}
+
+		Request best = null;
+		Request lowest = null;
+		for(int i = 0; i < pending.size(); i++)
+		{
+			Request request = pending.get(i);
+			if(faultsWaiting && request.background)
+			{
+				continue;
+			}
+			if(lowest == null || request.position < lowest.position)
+			{
+				lowest = request;
+			}
+			if(mode == SSTF)
+			{
+				if(best == null || Math.abs(request.position - head) < Math.abs(best.position - head))
+					best = request;
+			}
+			else if(request.position >= head && (best == null || request.position < best.position))
+			{
+				best = request;
+			}
+		}
+		return best != null ? best : lowest;	// C-LOOK wraps around to the lowest position
+	}
+}
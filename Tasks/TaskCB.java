@@ -26,6 +26,12 @@ import java.util.*;
 */
 public class TaskCB extends IflTaskCB
 {
+	// Priority of new tasks when osp.tasks.priority is not set; lower values are scheduled first
+	static final int DEFAULT_PRIORITY = 4;
+
+	private static int[] priorities;	// From osp.tasks.priorities, given to new tasks in turn; null to use osp.tasks.priority
+	private static int created = 0;		// Number of tasks created so far
+
 	// Declaring collections for maintaining threads, files and ports
 	private GenericList threads;
 	private GenericList ports;
@@ -59,8 +65,17 @@ public class TaskCB extends IflTaskCB
     */
     public static void init()
     {
-
-
+		// For example "0,8,16" gives the first task priority 0, the second 8, the third 16, the fourth 0 again
+		String list = System.getProperty("osp.tasks.priorities");
+		if(list != null && list.trim().length() > 0)
+		{
+			String[] items = list.split(",");
+			priorities = new int[items.length];
+			for(int i = 0; i < items.length; i++)
+			{
+				priorities[i] = Integer.parseInt(items[i].trim());
+			}
+		}
     }
 
     /**
@@ -68,7 +83,9 @@ public class TaskCB extends IflTaskCB
 
         Creates a new thread list, sets TaskLive status and creation time,
         creates and opens the task's swap file of the size equal to the size
-	(in bytes) of the addressable virtual memory.
+	(in bytes) of the addressable virtual memory. With osp.tasks.lazySwap
+	set the swap file is left to the Memory module, which creates it at
+	the task's first swap-out.
 
 	@return task or null
 
@@ -84,7 +101,20 @@ public class TaskCB extends IflTaskCB
 		task.setPageTable(pageTable);
 		task.setCreationTime(HClock.get());
 		task.setStatus(TaskLive);
-		task.setPriority(4);
+		if(priorities != null)
+		{
+			task.setPriority(priorities[created % priorities.length]);
+		}
+		else
+		{
+			task.setPriority(Integer.getInteger("osp.tasks.priority", DEFAULT_PRIORITY).intValue());
+		}
+		created++;
+
+		if(Boolean.getBoolean("osp.tasks.lazySwap")) {
+			ThreadCB.create(task).dispatch();
+			return task;
+		}
 
 		int sizeOfSwapFile = (int)Math.pow(2,MMU.getVirtualAddressBits());		// Swap file size is determined by Virtual Address bits.
 		String nameOfSwapFile = SwapDeviceMountPoint + task.getID();			// Name of swap file is same as ID of the task and is located in
@@ -149,8 +179,11 @@ public class TaskCB extends IflTaskCB
 			file.close();
 		}
 
-		String nameOfSwapFile = SwapDeviceMountPoint + this.getID();
-		FileSys.delete(nameOfSwapFile);
+		// A lazily created swap file may never have been made
+		if(this.getSwapFile() != null) {
+			String nameOfSwapFile = SwapDeviceMountPoint + this.getID();
+			FileSys.delete(nameOfSwapFile);
+		}
     }
 
     /**
@@ -0,0 +1,179 @@
+package osp.Threads;
+
+import osp.Hardware.*;
+
+/**
+   Multi-level feedback queue. Level 0 has the highest priority and the
+   shortest time slice. Each level's slice is also the allotment of CPU
+   time a thread may use there: all the CPU time it gets at a level is
+   added up, however often it blocks or is re-queued by the dispatcher,
+   and it drops one level once the allotment is used. It is dispatched
+   with a time slice of what is left of the allotment. Interactive
+   threads that run briefly stay near the top, and a thread cannot keep
+   its level by giving up the CPU just before the timer. Every
+   boostInterval ticks all threads go back to level 0, so CPU-bound
+   threads cannot starve.
+*/
+class MLFQScheduler implements Scheduler
+{
+	private ThreadQueue[] queues; // One ready queue per level
+	private int[] quanta; // Time slice of each level
+	private long boostInterval; // Ticks between priority boosts, 0 disables boosting
+	private long lastBoost = 0; // HClock time of the last boost
+	private int epoch = 0; // Number of boosts so far
+	private ThreadCB running; // Thread dispatched last, until it is charged for its CPU time
+	private long lastDispatch = 0; // HClock time running was dispatched
+
+	/**
+	   @param quantaList comma separated time slices, one per level, from
+	   the highest level to the lowest (e.g. "10,20,40")
+	*/
+	MLFQScheduler(String quantaList, long boostInterval)
+	{
+		String[] parts = quantaList.split(",");
+		quanta = new int[parts.length];
+		queues = new ThreadQueue[parts.length];
+		for(int i = 0; i < parts.length; i++)
+		{
+			quanta[i] = Integer.parseInt(parts[i].trim());
+			queues[i] = new ThreadQueue();
+		}
+		this.boostInterval = boostInterval;
+	}
+
+	public void add(ThreadCB thread)
+	{
+		if(thread == running)
+		{
+			charge(); // Re-queued by the dispatcher
+		}
+		if(thread.boostEpoch != epoch)
+		{
+			// Missed a boost while it was running or waiting; threads
+			// already at level 0 go back there anyway
+			thread.level = 0;
+			thread.levelTime = 0;
+			thread.boostEpoch = epoch;
+		}
+		queues[thread.level].append(thread);
+	}
+
+	public ThreadCB next()
+	{
+		charge();
+		if(boostInterval > 0 && HClock.get() - lastBoost >= boostInterval)
+		{
+			boost();
+		}
+		for(int i = 0; i < queues.length; i++)
+		{
+			if(!queues[i].isEmpty())
+			{
+				running = queues[i].removeHead();
+				lastDispatch = HClock.get();
+				return running;
+			}
+		}
+		return null;
+	}
+
+	// Ignores a boost that is due, which next() would do first
+	public ThreadCB peek()
+	{
+		for(int i = 0; i < queues.length; i++)
+		{
+			if(!queues[i].isEmpty())
+			{
+				return queues[i].head();
+			}
+		}
+		return null;
+	}
+
+	public boolean remove(ThreadCB thread)
+	{
+		return queues[thread.level].remove(thread);
+	}
+
+	public boolean contains(ThreadCB thread)
+	{
+		return queues[thread.level].contains(thread);
+	}
+
+	public boolean isEmpty()
+	{
+		for(int i = 0; i < queues.length; i++)
+		{
+			if(!queues[i].isEmpty())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int size()
+	{
+		int size = 0;
+		for(int i = 0; i < queues.length; i++)
+		{
+			size += queues[i].length();
+		}
+		return size;
+	}
+
+	// What is left of the allotment at the thread's level
+	public int timeSlice(ThreadCB thread)
+	{
+		return (int)Math.max(1, quanta[thread.level] - thread.levelTime);
+	}
+
+	public boolean quantumExpired(ThreadCB thread)
+	{
+		charge();
+		return true;
+	}
+
+	public void blocked(ThreadCB thread)
+	{
+		charge(); // Keeps its level unless this used up the allotment
+	}
+
+	// Adds the CPU time of the running thread to its level and demotes it once the allotment is used
+	private void charge()
+	{
+		if(running == null)
+		{
+			return;
+		}
+		ThreadCB thread = running;
+		running = null;
+		thread.levelTime += HClock.get() - lastDispatch;
+		if(thread.levelTime >= quanta[thread.level])
+		{
+			if(thread.level < queues.length - 1)
+			{
+				thread.level++;
+			}
+			thread.levelTime = 0;
+		}
+	}
+
+	// Moves every queued thread to level 0
+	private void boost()
+	{
+		lastBoost = HClock.get();
+		epoch++;
+		for(int i = 1; i < queues.length; i++)
+		{
+			while(!queues[i].isEmpty())
+			{
+				ThreadCB thread = queues[i].removeHead();
+				thread.level = 0;
+				thread.levelTime = 0;
+				thread.boostEpoch = epoch;
+				queues[0].append(thread);
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package osp.Threads;
+
+/**
+   Shortest-job-first scheduling on predicted CPU bursts. After every
+   burst the prediction is updated with an exponential average,
+
+       predicted = alpha * observed + (1 - alpha) * predicted,
+
+   and the ready threads are kept in a heap keyed on the time they are
+   predicted to still need, so the shortest one is dispatched first.
+
+   With a time slice the scheduler is SRTF: the timer does not end the
+   burst, it only makes the dispatcher put the running thread back in
+   the heap with its remaining time, where a shorter thread can overtake it.
+
+   A thread that is re-queued after running past its prediction gets
+   the prediction doubled from the time already used, so its remaining
+   time is at least the burst so far. Otherwise a CPU-bound thread would
+   come back with a remaining time of 0 and never give way.
+*/
+class SJFScheduler implements Scheduler
+{
+	private ThreadHeap heap = new ThreadHeap(); // Ready threads by predicted remaining burst
+	private int quantum; // Preemption check interval for SRTF, 0 for plain SJF
+	private double alpha; // Weight of the latest burst in the prediction
+
+	SJFScheduler(int quantum, double alpha)
+	{
+		this.quantum = quantum;
+		this.alpha = alpha;
+	}
+
+	public void add(ThreadCB thread)
+	{
+		if(thread.burstTime > 0 && thread.burstTime >= thread.predictedBurst)
+		{
+			thread.predictedBurst = 2.0 * thread.burstTime; // Preempted after overrunning the estimate
+		}
+		heap.insert(thread, thread.predictedBurst - thread.burstTime);
+	}
+
+	public ThreadCB next()
+	{
+		return heap.removeMin();
+	}
+
+	public ThreadCB peek()
+	{
+		return heap.peek();
+	}
+
+	public boolean remove(ThreadCB thread)
+	{
+		return heap.remove(thread);
+	}
+
+	public boolean contains(ThreadCB thread)
+	{
+		return heap.contains(thread);
+	}
+
+	public boolean isEmpty()
+	{
+		return heap.isEmpty();
+	}
+
+	public int size()
+	{
+		return heap.size();
+	}
+
+	public int timeSlice(ThreadCB thread)
+	{
+		return quantum;
+	}
+
+	public boolean quantumExpired(ThreadCB thread)
+	{
+		return false; // Only SRTF sets the timer, and there it just forces a new choice
+	}
+
+	public void blocked(ThreadCB thread)
+	{
+		thread.predictedBurst = alpha * thread.currentBurst() + (1 - alpha) * thread.predictedBurst;
+	}
+}
@@ -0,0 +1,64 @@
+package osp.Threads;
+
+/**
+    A ready queue together with the policy that orders it. ThreadCB
+    appends ready threads with add(), asks next() for the thread to
+    dispatch, and tells the scheduler when the running thread used up its
+    time slice or blocked. The scheduler is chosen once in ThreadCB.init()
+    from the osp.threads.scheduler system property.
+*/
+public interface Scheduler
+{
+    /**
+       Adds a thread that has become ready to run.
+    */
+    void add(ThreadCB thread);
+
+    /**
+       Removes and returns the thread to dispatch next, or null if no
+       thread is ready.
+    */
+    ThreadCB next();
+
+    /**
+       Returns the thread next() would most likely return, without
+       removing it or changing any scheduling state, or null if no thread
+       is ready.
+    */
+    ThreadCB peek();
+
+    /**
+       Removes a ready thread from the queue.
+       @return false if the thread was not in the queue
+    */
+    boolean remove(ThreadCB thread);
+
+    boolean contains(ThreadCB thread);
+
+    boolean isEmpty();
+
+    /**
+       Number of ready threads in the queue.
+    */
+    int size();
+
+    /**
+       Length of the time slice, in ticks, for the thread that is about to
+       be dispatched; 0 means it runs until it gives up the CPU.
+    */
+    int timeSlice(ThreadCB thread);
+
+    /**
+       Called by the timer interrupt handler when the running thread used
+       its whole time slice, before it is put back in the ready queue.
+       @return true if the expired slice ends the thread's CPU burst,
+       false if the timer only gives the scheduler a chance to preempt
+    */
+    boolean quantumExpired(ThreadCB thread);
+
+    /**
+       Called when the running thread gives up the CPU to wait for an
+       event or because it was killed.
+    */
+    void blocked(ThreadCB thread);
+}
@@ -0,0 +1,138 @@
+package osp.Threads;
+
+/**
+   Binary min-heap of threads. Each thread remembers its own position
+   (ThreadCB.heapIndex), so removing an arbitrary thread costs O(log n)
+   instead of a search. Threads with equal keys come out in the order
+   they were inserted.
+*/
+class ThreadHeap
+{
+	private ThreadCB[] heap = new ThreadCB[16];
+	private int size = 0;
+	private long sequence = 0; // Insertion counter for tie breaking
+
+	int size()
+	{
+		return size;
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	boolean contains(ThreadCB thread)
+	{
+		int i = thread.heapIndex;
+		return i >= 0 && i < size && heap[i] == thread;
+	}
+
+	void insert(ThreadCB thread, double key)
+	{
+		if(size == heap.length)
+		{
+			ThreadCB[] bigger = new ThreadCB[2 * heap.length];
+			System.arraycopy(heap, 0, bigger, 0, size);
+			heap = bigger;
+		}
+		thread.heapKey = key;
+		thread.heapSeq = sequence++;
+		heap[size] = thread;
+		thread.heapIndex = size;
+		size++;
+		siftUp(size - 1);
+	}
+
+	// Thread with the smallest key, or null
+	ThreadCB peek()
+	{
+		return size == 0 ? null : heap[0];
+	}
+
+	ThreadCB removeMin()
+	{
+		if(size == 0)
+		{
+			return null;
+		}
+		ThreadCB min = heap[0];
+		removeAt(0);
+		return min;
+	}
+
+	boolean remove(ThreadCB thread)
+	{
+		if(!contains(thread))
+		{
+			return false;
+		}
+		removeAt(thread.heapIndex);
+		return true;
+	}
+
+	private void removeAt(int i)
+	{
+		ThreadCB removed = heap[i];
+		size--;
+		if(i != size)
+		{
+			place(heap[size], i);
+			heap[size] = null;
+			siftDown(i);
+			siftUp(i);
+		}
+		else
+		{
+			heap[size] = null;
+		}
+		removed.heapIndex = -1;
+	}
+
+	private boolean less(ThreadCB a, ThreadCB b)
+	{
+		return a.heapKey < b.heapKey || (a.heapKey == b.heapKey && a.heapSeq < b.heapSeq);
+	}
+
+	private void place(ThreadCB thread, int i)
+	{
+		heap[i] = thread;
+		thread.heapIndex = i;
+	}
+
+	private void siftUp(int i)
+	{
+		ThreadCB thread = heap[i];
+		while(i > 0)
+		{
+			int parent = (i - 1) / 2;
+			if(!less(thread, heap[parent]))
+			{
+				break;
+			}
+			place(heap[parent], i);
+			i = parent;
+		}
+		place(thread, i);
+	}
+
+	private void siftDown(int i)
+	{
+		ThreadCB thread = heap[i];
+		while(2 * i + 1 < size)
+		{
+			int child = 2 * i + 1;
+			if(child + 1 < size && less(heap[child + 1], heap[child]))
+			{
+				child++;
+			}
+			if(!less(heap[child], thread))
+			{
+				break;
+			}
+			place(heap[child], i);
+			i = child;
+		}
+		place(thread, i);
+	}
+}
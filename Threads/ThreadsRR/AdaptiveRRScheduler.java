@@ -0,0 +1,73 @@
+package osp.Threads;
+
+import java.util.*;
+
+/**
+   Round robin with a time slice that adapts to the workload. The slice
+   is the median of the last BURSTS observed CPU bursts, so about half of
+   the bursts finish within one slice, and it is shortened when the ready
+   queue is long so that every ready thread gets the CPU within
+   targetLatency ticks. The result is kept between minQuantum and
+   maxQuantum.
+
+   A burst ends when the thread blocks or its slice expires. The real
+   length of a burst cut off by the timer is unknown, only that it was
+   longer than the slice, so it counts as twice the slice (at most
+   maxQuantum). That lets the median, and with it the slice, grow for
+   CPU-bound mixes.
+*/
+class AdaptiveRRScheduler extends FifoScheduler
+{
+	static final int BURSTS = 16; // Number of recent bursts the median is taken over
+
+	private int minQuantum;
+	private int maxQuantum;
+	private int targetLatency; // Ticks within which every ready thread should run once
+	private long[] bursts = new long[BURSTS]; // Ring buffer of recent bursts
+	private long[] sorted = new long[BURSTS]; // Scratch space for the median
+	private int burstCount = 0; // Bursts recorded so far, up to BURSTS
+	private int nextBurst = 0; // Ring buffer slot for the next burst
+
+	AdaptiveRRScheduler(int minQuantum, int maxQuantum, int targetLatency)
+	{
+		super(maxQuantum);
+		this.minQuantum = minQuantum;
+		this.maxQuantum = maxQuantum;
+		this.targetLatency = targetLatency;
+	}
+
+	public int timeSlice(ThreadCB thread)
+	{
+		long quantum = (burstCount == 0) ? maxQuantum : medianBurst();
+		quantum = Math.min(quantum, targetLatency / (size() + 1));
+		return (int)Math.max(minQuantum, Math.min(maxQuantum, quantum));
+	}
+
+	public boolean quantumExpired(ThreadCB thread)
+	{
+		recordBurst(Math.min(maxQuantum, 2 * thread.currentBurst()));
+		return true;
+	}
+
+	public void blocked(ThreadCB thread)
+	{
+		recordBurst(thread.currentBurst());
+	}
+
+	private void recordBurst(long burst)
+	{
+		bursts[nextBurst] = burst;
+		nextBurst = (nextBurst + 1) % BURSTS;
+		if(burstCount < BURSTS)
+		{
+			burstCount++;
+		}
+	}
+
+	private long medianBurst()
+	{
+		System.arraycopy(bursts, 0, sorted, 0, burstCount);
+		Arrays.sort(sorted, 0, burstCount);
+		return sorted[burstCount / 2];
+	}
+}
@@ -0,0 +1,65 @@
+package osp.Threads;
+
+/**
+   A single first-come first-served queue. With a time slice of 0 this
+   is FCFS; with a positive time slice it is round robin.
+*/
+class FifoScheduler implements Scheduler
+{
+	private ThreadQueue readyQueue = new ThreadQueue(); // Queue for ready threads
+	private int quantum; // Time slice in ticks, 0 for none
+
+	FifoScheduler(int quantum)
+	{
+		this.quantum = quantum;
+	}
+
+	public void add(ThreadCB thread)
+	{
+		readyQueue.append(thread);
+	}
+
+	public ThreadCB next()
+	{
+		return readyQueue.removeHead();
+	}
+
+	public ThreadCB peek()
+	{
+		return readyQueue.head();
+	}
+
+	public boolean remove(ThreadCB thread)
+	{
+		return readyQueue.remove(thread);
+	}
+
+	public boolean contains(ThreadCB thread)
+	{
+		return readyQueue.contains(thread);
+	}
+
+	public boolean isEmpty()
+	{
+		return readyQueue.isEmpty();
+	}
+
+	public int size()
+	{
+		return readyQueue.length();
+	}
+
+	public int timeSlice(ThreadCB thread)
+	{
+		return quantum;
+	}
+
+	public boolean quantumExpired(ThreadCB thread)
+	{
+		return true;
+	}
+
+	public void blocked(ThreadCB thread)
+	{
+	}
+}
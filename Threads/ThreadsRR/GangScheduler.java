@@ -0,0 +1,183 @@
+package osp.Threads;
+
+import java.util.*;
+import osp.IFLModules.*;
+import osp.Tasks.*;
+
+/**
+   Gang scheduling by batching. Ready threads are queued per task, and
+   once a task gets the CPU up to gangSize of its threads are dispatched
+   back to back before the next task with ready threads gets its turn.
+   Consecutive threads of one task share a page table, so the dispatcher
+   does not reload the PTBR and an untagged TLB is not flushed between
+   them. Tasks take turns in the order their first thread became ready.
+
+   avoidedSwitches counts the batched dispatches made while the oldest
+   ready thread belonged to another task, i.e. the dispatches where FCFS
+   would have switched address spaces.
+*/
+class GangScheduler implements Scheduler
+{
+	private int quantum; // Time slice in ticks, 0 for none
+	private int gangSize; // Most consecutive dispatches of one task
+	private HashMap<TaskCB, ThreadQueue> queues = new HashMap<TaskCB, ThreadQueue>(); // Ready threads of every task seen
+	private ArrayDeque<TaskCB> turns = new ArrayDeque<TaskCB>(); // Tasks with ready threads, next turn first
+	private TaskCB current; // Task whose batch is being dispatched
+	private int batch = 0; // Dispatches of the current task so far
+	private int size = 0; // Number of ready threads
+	long avoidedSwitches = 0;
+
+	GangScheduler(int quantum, int gangSize)
+	{
+		this.quantum = quantum;
+		this.gangSize = Math.max(1, gangSize);
+	}
+
+	public void add(ThreadCB thread)
+	{
+		TaskCB task = thread.getTask();
+		ThreadQueue queue = queues.get(task);
+		if(queue == null)
+		{
+			forgetDeadTasks();
+			queue = new ThreadQueue();
+			queues.put(task, queue);
+		}
+		if(queue.isEmpty())
+		{
+			turns.addLast(task);
+		}
+		queue.append(thread);
+		size++;
+	}
+
+	public ThreadCB next()
+	{
+		if(current != null && batch < gangSize)
+		{
+			ThreadQueue queue = queues.get(current);
+			if(queue != null && !queue.isEmpty())	// Null once a terminated task is forgotten
+			{
+				ThreadCB thread = take(current, queue);
+				batch++;
+				if(olderElsewhere(thread))
+				{
+					avoidedSwitches++;
+				}
+				return thread;
+			}
+		}
+
+		// The current batch is over; the task goes to the back of the turns
+		TaskCB task = turns.pollFirst();
+		if(task == null)
+		{
+			current = null;
+			return null;
+		}
+		turns.addLast(task);
+		current = task;
+		batch = 1;
+		return take(task, queues.get(task));
+	}
+
+	public ThreadCB peek()
+	{
+		if(current != null && batch < gangSize)
+		{
+			ThreadQueue queue = queues.get(current);
+			if(queue != null && !queue.isEmpty())
+			{
+				return queue.head();
+			}
+		}
+		TaskCB task = turns.peekFirst();
+		return task == null ? null : queues.get(task).head();
+	}
+
+	public boolean remove(ThreadCB thread)
+	{
+		TaskCB task = thread.getTask();
+		ThreadQueue queue = queues.get(task);
+		if(queue == null || !queue.remove(thread))
+		{
+			return false;
+		}
+		size--;
+		if(queue.isEmpty())
+		{
+			turns.remove(task);
+		}
+		return true;
+	}
+
+	public boolean contains(ThreadCB thread)
+	{
+		ThreadQueue queue = queues.get(thread.getTask());
+		return queue != null && queue.contains(thread);
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int timeSlice(ThreadCB thread)
+	{
+		return quantum;
+	}
+
+	public boolean quantumExpired(ThreadCB thread)
+	{
+		return true;
+	}
+
+	public void blocked(ThreadCB thread)
+	{
+	}
+
+	// Drops the queues of terminated tasks, checked whenever a new task is first seen
+	private void forgetDeadTasks()
+	{
+		Iterator<Map.Entry<TaskCB, ThreadQueue>> i = queues.entrySet().iterator();
+		while(i.hasNext())
+		{
+			Map.Entry<TaskCB, ThreadQueue> entry = i.next();
+			if(entry.getValue().isEmpty() && entry.getKey().getStatus() == GlobalVariables.TaskTerm)
+			{
+				i.remove();
+			}
+		}
+	}
+
+	// Dequeues the first thread of the task and drops the task from the turns once it has no ready threads
+	private ThreadCB take(TaskCB task, ThreadQueue queue)
+	{
+		ThreadCB thread = queue.removeHead();
+		size--;
+		if(queue.isEmpty())
+		{
+			turns.remove(task);
+		}
+		return thread;
+	}
+
+	// Whether a thread of another task has been ready longer than the given one
+	private boolean olderElsewhere(ThreadCB thread)
+	{
+		for(TaskCB task : turns)
+		{
+			ThreadCB head = queues.get(task).head();
+			if(task != current && head.readySince < thread.readySince)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,133 @@
+package osp.Threads;
+
+import osp.Hardware.*;
+
+/**
+   O(1) priority scheduler in the style of the Linux 2.6 scheduler. There
+   is one FIFO queue per priority level and a bitmap with a bit set for
+   every non-empty level, so the highest ready priority is found with a
+   single bit scan. Level 0 is the highest priority; priorities outside
+   0..LEVELS-1 are clamped. A thread is queued at the priority of its
+   task, read every time it is queued, so TaskCB.setPriority takes effect
+   at the task's next requeue.
+
+   With aging enabled, every agingInterval ticks each waiting thread moves
+   up one level, so low priority threads are not starved. A thread goes
+   back to its own priority when it is queued again.
+*/
+class PriorityScheduler implements Scheduler
+{
+	static final int LEVELS = 32; // One bit of the bitmap per level
+
+	private ThreadQueue[] queues = new ThreadQueue[LEVELS]; // Ready threads of each level
+	private int bitmap = 0; // Bit i is set when queues[i] is not empty
+	private int count = 0; // Number of queued threads
+	private int quantum; // Time slice in ticks, 0 for none
+	private long agingInterval; // Ticks between aging steps, 0 disables aging
+	private long lastAging = 0; // HClock time of the last aging step
+
+	PriorityScheduler(int quantum, long agingInterval)
+	{
+		for(int i = 0; i < LEVELS; i++)
+		{
+			queues[i] = new ThreadQueue();
+		}
+		this.quantum = quantum;
+		this.agingInterval = agingInterval;
+	}
+
+	public void add(ThreadCB thread)
+	{
+		int level = Math.max(0, Math.min(LEVELS - 1, thread.getTask().getPriority()));
+		thread.queuedLevel = level;
+		queues[level].append(thread);
+		bitmap |= (1 << level);
+		count++;
+	}
+
+	public ThreadCB next()
+	{
+		if(agingInterval > 0 && HClock.get() - lastAging >= agingInterval)
+		{
+			age();
+		}
+		if(bitmap == 0)
+		{
+			return null;
+		}
+		int level = Integer.numberOfTrailingZeros(bitmap);
+		ThreadCB thread = queues[level].removeHead();
+		count--;
+		if(queues[level].isEmpty())
+		{
+			bitmap &= ~(1 << level);
+		}
+		return thread;
+	}
+
+	// Ignores an aging step that is due, which next() would do first
+	public ThreadCB peek()
+	{
+		return bitmap == 0 ? null : queues[Integer.numberOfTrailingZeros(bitmap)].head();
+	}
+
+	public boolean remove(ThreadCB thread)
+	{
+		int level = thread.queuedLevel;
+		if(!queues[level].remove(thread))
+		{
+			return false;
+		}
+		count--;
+		if(queues[level].isEmpty())
+		{
+			bitmap &= ~(1 << level);
+		}
+		return true;
+	}
+
+	public boolean contains(ThreadCB thread)
+	{
+		return queues[thread.queuedLevel].contains(thread);
+	}
+
+	public boolean isEmpty()
+	{
+		return bitmap == 0;
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	public int timeSlice(ThreadCB thread)
+	{
+		return quantum;
+	}
+
+	public boolean quantumExpired(ThreadCB thread)
+	{
+		return true;
+	}
+
+	public void blocked(ThreadCB thread)
+	{
+	}
+
+	// Moves every waiting thread up one level
+	private void age()
+	{
+		lastAging = HClock.get();
+		for(int level = 1; level < LEVELS; level++)
+		{
+			while(!queues[level].isEmpty())
+			{
+				ThreadCB thread = queues[level].removeHead();
+				thread.queuedLevel = level - 1;
+				queues[level - 1].append(thread);
+			}
+		}
+		bitmap = (bitmap >>> 1) | (bitmap & 1);
+	}
+}
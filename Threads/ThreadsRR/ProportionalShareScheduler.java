@@ -0,0 +1,304 @@
+package osp.Threads;
+
+import java.util.*;
+import osp.IFLModules.*;
+import osp.Tasks.*;
+import osp.Hardware.*;
+
+/**
+   Proportional-share scheduling between tasks. Every task holds tickets,
+   by default 32 minus its priority, so priority 0 gets the most. The
+   CPU is divided between tasks with ready threads in proportion to
+   their tickets; the threads of one task take turns in FIFO order.
+
+   Stride mode: each task has a stride of STRIDE1 / tickets and a pass
+   value. The task with the lowest pass runs next. When it gives up the
+   CPU its pass advances by stride * ticks used / quantum, so a task that
+   runs for one tick is charged far less than one that uses its whole
+   slice, and the shares hold in CPU time even though the dispatcher
+   re-queues the running thread on every event. Tasks are kept in a
+   heap ordered by pass. The running task stays out of the heap until it
+   has been charged, so a choice costs O(log n). A task that had no
+   ready threads rejoins at the current global pass, so it cannot save
+   up CPU time while waiting. The CPU time of a task ends when its thread
+   blocks or is killed, so the CPU idling is charged to nobody.
+
+   Lottery mode: a ticket is drawn at random among the tasks with ready
+   threads. This needs no per-task state but is only fair on average,
+   and a draw walks the live tasks.
+
+   The state of a task is dropped once it has terminated and has no
+   ready threads left, checked whenever a new task is first seen and
+   during lottery draws and reports.
+*/
+class ProportionalShareScheduler implements Scheduler
+{
+	static final long STRIDE1 = 1 << 20; // Stride of a task holding one ticket
+
+	private boolean lottery; // Lottery instead of stride scheduling
+	private int quantum; // Time slice, so every dispatch is worth about the same CPU time
+	private HashMap<TaskCB, Share> shares = new HashMap<TaskCB, Share>(); // Scheduling state of every task seen
+	private PriorityQueue<Share> byPass = new PriorityQueue<Share>(); // Tasks that may have ready threads, lowest pass first
+	private long globalPass = 0; // Pass of the task dispatched last
+	private Random random = new Random(657);
+	private int size = 0; // Number of ready threads
+	private Share running; // Task on the CPU, out of the heap until charged for its CPU time
+	private long lastDispatch = 0;
+	private long totalTicks = 0; // CPU time charged to all tasks
+
+	ProportionalShareScheduler(boolean lottery, int quantum)
+	{
+		this.lottery = lottery;
+		this.quantum = quantum;
+	}
+
+	// Overrides the tickets a task gets from its priority
+	void setTickets(TaskCB task, int tickets)
+	{
+		share(task).setTickets(tickets);
+	}
+
+	public void add(ThreadCB thread)
+	{
+		Share share = share(thread.getTask());
+		share.ready.append(thread);
+		size++;
+		if(!lottery && !share.inHeap && share != running)
+		{
+			share.pass = Math.max(share.pass, globalPass);
+			share.inHeap = true;
+			byPass.add(share);
+		}
+	}
+
+	public ThreadCB next()
+	{
+		stopRunning();
+		Share share = lottery ? draw() : lowestPass();
+		if(share == null)
+		{
+			return null;
+		}
+		running = share;
+		lastDispatch = HClock.get();
+		size--;
+		return share.ready.removeHead();
+	}
+
+	// First ready thread of the task with the lowest pass; a lottery draw is random, so it takes the same one
+	public ThreadCB peek()
+	{
+		Share best = null;
+		for(Share share : shares.values())
+		{
+			if(!share.ready.isEmpty() && (best == null || share.pass < best.pass))
+			{
+				best = share;
+			}
+		}
+		return best == null ? null : best.ready.head();
+	}
+
+	public boolean remove(ThreadCB thread)
+	{
+		// A task left without ready threads stays in the heap and is dropped when it reaches the top
+		Share share = shares.get(thread.getTask());
+		if(share == null || !share.ready.remove(thread))
+		{
+			return false;
+		}
+		size--;
+		return true;
+	}
+
+	public boolean contains(ThreadCB thread)
+	{
+		Share share = shares.get(thread.getTask());
+		return share != null && share.ready.contains(thread);
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int timeSlice(ThreadCB thread)
+	{
+		return quantum;
+	}
+
+	public boolean quantumExpired(ThreadCB thread)
+	{
+		return true;
+	}
+
+	public void blocked(ThreadCB thread)
+	{
+		stopRunning();
+	}
+
+	/**
+	   One line per task: tickets, target share of the CPU (its tickets
+	   over all tickets) and the share it actually got.
+	*/
+	String report()
+	{
+		forgetDeadTasks();
+		long tickets = 0;
+		for(Share share : shares.values())
+		{
+			tickets += share.tickets;
+		}
+		StringBuffer report = new StringBuffer();
+		for(Map.Entry<TaskCB, Share> entry : shares.entrySet())
+		{
+			Share share = entry.getValue();
+			report.append("Task " + entry.getKey().getID()
+				+ " tickets " + share.tickets
+				+ " target " + (tickets == 0 ? 0.0 : (double)share.tickets / tickets)
+				+ " achieved " + (totalTicks == 0 ? 0.0 : (double)share.cpuTicks / totalTicks) + "\n");
+		}
+		return report.toString();
+	}
+
+	private Share share(TaskCB task)
+	{
+		Share share = shares.get(task);
+		if(share == null)
+		{
+			forgetDeadTasks();
+			share = new Share(task, Math.max(1, 32 - task.getPriority()));
+			shares.put(task, share);
+		}
+		return share;
+	}
+
+	// Removes the state of terminated tasks that have no ready threads
+	private void forgetDeadTasks()
+	{
+		Iterator<Share> i = shares.values().iterator();
+		while(i.hasNext())
+		{
+			if(i.next().isDead())
+			{
+				i.remove();
+			}
+		}
+	}
+
+	// Task with the lowest pass that has a ready thread
+	private Share lowestPass()
+	{
+		while(!byPass.isEmpty())
+		{
+			Share share = byPass.poll();
+			if(share.ready.isEmpty())
+			{
+				share.inHeap = false;
+				if(share.isDead())
+				{
+					shares.remove(share.task);
+				}
+				continue;
+			}
+			globalPass = share.pass;
+			share.inHeap = false; // Put back by stopRunning() once charged
+			return share;
+		}
+		return null;
+	}
+
+	/**
+	   Charges the running task for the CPU time since it was dispatched,
+	   advancing its pass in units of a full slice, and puts it back in
+	   the heap if it has ready threads.
+	*/
+	private void stopRunning()
+	{
+		if(running == null)
+		{
+			return;
+		}
+		long ticks = HClock.get() - lastDispatch;
+		running.cpuTicks += ticks;
+		totalTicks += ticks;
+		if(!lottery)
+		{
+			running.pass += running.stride * ticks / Math.max(1, quantum);
+			if(!running.ready.isEmpty())
+			{
+				running.inHeap = true;
+				byPass.add(running);
+			}
+		}
+		running = null;
+	}
+
+	// Task holding a randomly drawn ticket among the tasks with ready threads
+	private Share draw()
+	{
+		long tickets = 0;
+		Iterator<Share> i = shares.values().iterator();
+		while(i.hasNext())
+		{
+			Share share = i.next();
+			if(!share.ready.isEmpty())
+				tickets += share.tickets;
+			else if(share.isDead())
+				i.remove();
+		}
+		if(tickets == 0)
+		{
+			return null;
+		}
+		long winner = (long)(random.nextDouble() * tickets);
+		for(Share share : shares.values())
+		{
+			if(share.ready.isEmpty())
+				continue;
+			winner -= share.tickets;
+			if(winner < 0)
+				return share;
+		}
+		return null;
+	}
+
+	// Per-task scheduling state
+	private static class Share implements Comparable<Share>
+	{
+		TaskCB task;
+		ThreadQueue ready = new ThreadQueue(); // Ready threads of the task
+		int tickets;
+		long stride;
+		long pass = 0;
+		boolean inHeap = false; // Whether the task is in byPass
+		long cpuTicks = 0; // CPU time charged to the task
+
+		Share(TaskCB task, int tickets)
+		{
+			this.task = task;
+			setTickets(tickets);
+		}
+
+		boolean isDead()
+		{
+			return ready.isEmpty() && task.getStatus() == GlobalVariables.TaskTerm;
+		}
+
+		void setTickets(int tickets)
+		{
+			this.tickets = Math.max(1, tickets);
+			this.stride = STRIDE1 / this.tickets;
+		}
+
+		public int compareTo(Share other)
+		{
+			return pass < other.pass ? -1 : (pass > other.pass ? 1 : 0);
+		}
+	}
+}
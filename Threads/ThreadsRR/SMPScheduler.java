@@ -0,0 +1,194 @@
+package osp.Threads;
+
+import osp.Memory.*;
+import osp.Hardware.*;
+
+/**
+   Models a multiprocessor on top of OSP's single CPU. There are N
+   logical CPUs, each with its own run queue (any of the other
+   schedulers) and its own PTBR, and the real CPU serves them in turn:
+   every dispatch moves on to the next logical CPU and runs a thread from
+   its queue. A CPU whose queue is empty steals from the busiest CPU the
+   thread that CPU would run next under its own policy, which is the
+   oldest one only for FCFS and RR queues. The thread is found with
+   peek() and taken with remove(), so the busiest CPU's policy sees no
+   dispatch: no pass is charged, no gang batch counted, no boost or
+   aging step run on its behalf.
+
+   New and resumed threads go to the CPU with the shortest queue. With
+   affinity on, a thread that has run before goes back to the CPU it last
+   ran on, whose TLB and cache it has warmed, instead.
+*/
+class SMPScheduler implements Scheduler
+{
+	private Scheduler[] cpus; // Run queue of each logical CPU
+	private PageTable[] ptbr; // Page table last loaded on each logical CPU
+	private boolean affinity; // Requeue threads on the CPU they last ran on
+	private int current = -1; // Logical CPU served by the last dispatch
+	private long lastDispatch = 0; // HClock time of the last dispatch
+	private long[] busyTicks; // Time each logical CPU spent running threads
+	private long[] addressSpaceSwitches; // PTBR changes on each logical CPU
+	long migrations = 0; // Threads that ran on a different CPU than the time before
+	long steals = 0; // Threads taken from another CPU's queue
+
+	SMPScheduler(int count, String queueScheduler, boolean affinity)
+	{
+		cpus = new Scheduler[count];
+		for(int i = 0; i < count; i++)
+		{
+			cpus[i] = ThreadCB.createScheduler(queueScheduler);
+		}
+		ptbr = new PageTable[count];
+		busyTicks = new long[count];
+		addressSpaceSwitches = new long[count];
+		this.affinity = affinity;
+	}
+
+	public void add(ThreadCB thread)
+	{
+		int cpu = (affinity && thread.lastCpu >= 0) ? thread.lastCpu : shortestQueue();
+		thread.cpu = cpu;
+		cpus[cpu].add(thread);
+	}
+
+	public ThreadCB next()
+	{
+		long now = HClock.get();
+		if(current >= 0)
+		{
+			busyTicks[current] += now - lastDispatch;
+		}
+		lastDispatch = now;
+
+		current = (current + 1) % cpus.length;
+		ThreadCB thread = cpus[current].next();
+		if(thread == null)
+		{
+			// Idle CPU: steal from the CPU with the longest queue
+			int busiest = longestQueue();
+			thread = cpus[busiest].peek();
+			if(thread == null)
+			{
+				return null;
+			}
+			cpus[busiest].remove(thread);
+			steals++;
+		}
+
+		if(thread.lastCpu >= 0 && thread.lastCpu != current)
+		{
+			migrations++;
+		}
+		thread.cpu = current;
+		thread.lastCpu = current;
+		PageTable pageTable = thread.getTask().getPageTable();
+		if(ptbr[current] != pageTable)
+		{
+			ptbr[current] = pageTable;
+			addressSpaceSwitches[current]++;
+		}
+		return thread;
+	}
+
+	// Thread the next logical CPU would run, or steal if its queue is empty
+	public ThreadCB peek()
+	{
+		ThreadCB thread = cpus[(current + 1) % cpus.length].peek();
+		return thread != null ? thread : cpus[longestQueue()].peek();
+	}
+
+	public boolean remove(ThreadCB thread)
+	{
+		return thread.cpu >= 0 && cpus[thread.cpu].remove(thread);
+	}
+
+	public boolean contains(ThreadCB thread)
+	{
+		return thread.cpu >= 0 && cpus[thread.cpu].contains(thread);
+	}
+
+	public boolean isEmpty()
+	{
+		for(int i = 0; i < cpus.length; i++)
+		{
+			if(!cpus[i].isEmpty())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int size()
+	{
+		int size = 0;
+		for(int i = 0; i < cpus.length; i++)
+		{
+			size += cpus[i].size();
+		}
+		return size;
+	}
+
+	public int timeSlice(ThreadCB thread)
+	{
+		return cpus[thread.cpu].timeSlice(thread);
+	}
+
+	public boolean quantumExpired(ThreadCB thread)
+	{
+		return cpus[thread.cpu].quantumExpired(thread);
+	}
+
+	public void blocked(ThreadCB thread)
+	{
+		cpus[thread.cpu].blocked(thread);
+	}
+
+	int cpuCount()
+	{
+		return cpus.length;
+	}
+
+	/**
+	   Fraction of its 1/N share of the real CPU that the logical CPU spent
+	   running threads. A dispatch slot counts as busy until the next
+	   dispatch, so idle gaps of the whole machine are charged to the CPU
+	   that ran last.
+	*/
+	double utilization(int cpu)
+	{
+		long now = HClock.get();
+		return now == 0 ? 0.0 : (double)busyTicks[cpu] * cpus.length / now;
+	}
+
+	long addressSpaceSwitches(int cpu)
+	{
+		return addressSpaceSwitches[cpu];
+	}
+
+	private int shortestQueue()
+	{
+		int best = 0;
+		for(int i = 1; i < cpus.length; i++)
+		{
+			if(cpus[i].size() < cpus[best].size())
+			{
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	private int longestQueue()
+	{
+		int best = 0;
+		for(int i = 1; i < cpus.length; i++)
+		{
+			if(cpus[i].size() > cpus[best].size())
+			{
+				best = i;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,117 @@
+package osp.Threads;
+
+import java.io.*;
+import osp.Hardware.*;
+import osp.Utilities.*;
+
+/**
+   Counters and histograms for the Threads module. The dispatcher only
+   bumps counters and records into preallocated histograms; nothing is
+   formatted or printed while the simulation runs. The numbers are
+   turned into CSV or JSON by toCSV()/toJSON() on demand, and written to
+   the file named by osp.threads.metricsFile when the simulator exits
+   (JSON if the name ends in .json, CSV otherwise).
+
+   All times are in HClock ticks.
+*/
+class SchedulerMetrics
+{
+	static long created = 0; // Threads created
+	static long dispatches = 0; // Successful calls of do_dispatch
+	static long contextSwitches = 0; // Dispatches that put a different thread on the CPU
+	static long addressSpaceSwitches = 0; // Dispatches of a thread of another task than the one before
+	static long preemptions = 0; // Timer interrupts that took the CPU from a thread
+	static long suspensions = 0; // Running threads that blocked
+	static long exits = 0; // Threads killed
+	static long lastExit = 0; // HClock time of the last thread exit
+
+	static final Histogram responseTime = new Histogram(); // Creation to first dispatch
+	static final Histogram waitingTime = new Histogram(); // Time in the ready queue per wait
+	static final Histogram turnaround = new Histogram(); // Creation to exit
+	static final Histogram queueLength = new Histogram(); // Ready threads seen at each dispatch
+	static final Histogram burstLength = new Histogram(); // CPU bursts ended by blocking or a full slice
+
+	private static final String[] HISTOGRAM_NAMES = {"responseTime", "waitingTime", "turnaround", "queueLength", "burstLength"};
+	private static final Histogram[] HISTOGRAMS = {responseTime, waitingTime, turnaround, queueLength, burstLength};
+
+	// Writes the metrics to the osp.threads.metricsFile file when the simulator exits, if set
+	static void writeOnExit()
+	{
+		final String fileName = System.getProperty("osp.threads.metricsFile");
+		if(fileName == null)
+		{
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run()
+			{
+				try
+				{
+					PrintWriter out = new PrintWriter(new FileWriter(fileName));
+					out.print(fileName.endsWith(".json") ? toJSON() : toCSV());
+					out.close();
+				}
+				catch(IOException e)
+				{
+					System.err.println("Cannot write thread metrics to " + fileName + ": " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	// Completed threads per 1000 ticks up to the last exit
+	static double throughput()
+	{
+		return lastExit == 0 ? 0.0 : exits * 1000.0 / lastExit;
+	}
+
+	static String toCSV()
+	{
+		StringBuffer csv = new StringBuffer();
+		csv.append("metric,count,mean,min,p50,p90,p99,max\n");
+		csv.append("created," + created + ",,,,,,\n");
+		csv.append("dispatches," + dispatches + ",,,,,,\n");
+		csv.append("contextSwitches," + contextSwitches + ",,,,,,\n");
+		csv.append("addressSpaceSwitches," + addressSpaceSwitches + ",,,,,,\n");
+		csv.append("avoidedSwitches," + ThreadCB.getAvoidedSwitches() + ",,,,,,\n");
+		csv.append("preemptions," + preemptions + ",,,,,,\n");
+		csv.append("suspensions," + suspensions + ",,,,,,\n");
+		csv.append("exits," + exits + ",,,,,,\n");
+		csv.append("throughputPer1000Ticks,," + throughput() + ",,,,,\n");
+		for(int i = 0; i < HISTOGRAMS.length; i++)
+		{
+			Histogram h = HISTOGRAMS[i];
+			csv.append(HISTOGRAM_NAMES[i] + "," + h.count() + "," + h.mean() + "," + h.min() + ","
+				+ h.percentile(50) + "," + h.percentile(90) + "," + h.percentile(99) + "," + h.max() + "\n");
+		}
+		return csv.toString();
+	}
+
+	static String toJSON()
+	{
+		StringBuffer json = new StringBuffer();
+		json.append("{\"clock\":" + HClock.get()
+			+ ",\"created\":" + created
+			+ ",\"dispatches\":" + dispatches
+			+ ",\"contextSwitches\":" + contextSwitches
+			+ ",\"addressSpaceSwitches\":" + addressSpaceSwitches
+			+ ",\"avoidedSwitches\":" + ThreadCB.getAvoidedSwitches()
+			+ ",\"preemptions\":" + preemptions
+			+ ",\"suspensions\":" + suspensions
+			+ ",\"exits\":" + exits
+			+ ",\"throughputPer1000Ticks\":" + throughput());
+		for(int i = 0; i < HISTOGRAMS.length; i++)
+		{
+			Histogram h = HISTOGRAMS[i];
+			json.append(",\"" + HISTOGRAM_NAMES[i] + "\":{\"count\":" + h.count()
+				+ ",\"mean\":" + h.mean()
+				+ ",\"min\":" + h.min()
+				+ ",\"p50\":" + h.percentile(50)
+				+ ",\"p90\":" + h.percentile(90)
+				+ ",\"p99\":" + h.percentile(99)
+				+ ",\"max\":" + h.max() + "}");
+		}
+		json.append("}\n");
+		return json.toString();
+	}
+}
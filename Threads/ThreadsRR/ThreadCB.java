@@ -19,11 +19,29 @@ import osp.Resources.*;
 public class ThreadCB extends IflThreadCB 
 {
     
-	private static GenericList readyQueue; // Queue for ready threads
-	private static int count = 0; // Count of number of threads
-	private static long sumOfResponseTime = 0; // Total response time of all threads
-	private static long throughputTime = 0; // Total time for all threads
+	// Scheduler used when the osp.threads.scheduler property is not set
+	static final String DEFAULT_SCHEDULER = "RR";
+
+	static Scheduler scheduler; // Ready queue and scheduling algorithm, chosen in init()
+	static double initialBurstPrediction = 10; // Predicted first burst of a new thread
+	private static TaskCB lastTask; // Task whose page table the dispatcher loaded last
 	private boolean started; // Flag to check if thread has started
+	long readySince; // HClock time the thread last entered the ready queue
+	long dispatchTime; // HClock time the thread last got the CPU
+	long burstTime; // CPU time of the current burst before it last got the CPU
+	double predictedBurst; // Exponential average of past bursts, used by SJF and SRTF
+	int heapIndex; // Position in a ThreadHeap, -1 if not in one
+	double heapKey; // Key the thread was inserted into a ThreadHeap with
+	long heapSeq; // Insertion order, breaks ties between equal keys
+	ThreadQueue queue; // Ready queue the thread is linked into, or null
+	ThreadCB queuePrev; // Neighbours in that queue
+	ThreadCB queueNext;
+	int cpu; // Logical CPU whose run queue holds the thread, used by the SMP scheduler
+	int lastCpu; // Logical CPU the thread last ran on, -1 if it never ran
+	int level; // Queue level used by the MLFQ scheduler, 0 is the highest
+	int boostEpoch; // MLFQ boost this thread has seen
+	long levelTime; // CPU time used at its MLFQ level, counted against the level's allotment
+	int queuedLevel; // Priority queue the thread is in, used by the priority scheduler
 	
 	// Helper function to set started status
 	public void setStarted(boolean status)
@@ -52,6 +70,20 @@ public class ThreadCB extends IflThreadCB
        
 		super();
 		started = false;
+		level = 0;
+		boostEpoch = 0;
+		queuedLevel = 0;
+		dispatchTime = 0;
+		burstTime = 0;
+		predictedBurst = initialBurstPrediction;
+		heapIndex = -1;
+		heapKey = 0;
+		heapSeq = 0;
+		queue = null;
+		queuePrev = null;
+		queueNext = null;
+		cpu = -1;
+		lastCpu = -1;
     }
 
     /**
@@ -63,9 +95,167 @@ public class ThreadCB extends IflThreadCB
     public static void init()
     {
        
-		readyQueue = new GenericList();
+		scheduler = createScheduler(System.getProperty("osp.threads.scheduler", DEFAULT_SCHEDULER));
+		SchedulerMetrics.writeOnExit();
     }
 
+	/**
+	   Returns the scheduler with the given name: FCFS, RR, ADAPTIVE_RR,
+	   MLFQ, PRIORITY, SJF, SRTF, STRIDE, LOTTERY, GANG or SMP.
+	   Unknown names fall back to the default scheduler.
+	*/
+	static Scheduler createScheduler(String name)
+	{
+		String key = name.trim().toUpperCase();
+		int quantum = Integer.getInteger("osp.threads.quantum", 30).intValue();
+		if(key.equals("FCFS") || key.equals("FIFO"))
+			return new FifoScheduler(0);
+		if(key.equals("RR"))
+			return new FifoScheduler(quantum);
+		if(key.equals("ADAPTIVE_RR"))
+			return new AdaptiveRRScheduler(Integer.getInteger("osp.threads.minQuantum", 5).intValue(),
+				Integer.getInteger("osp.threads.maxQuantum", 100).intValue(),
+				Integer.getInteger("osp.threads.targetLatency", 200).intValue());
+		if(key.equals("SJF") || key.equals("SRTF"))
+		{
+			initialBurstPrediction = Double.parseDouble(System.getProperty("osp.threads.initialBurst", "10"));
+			return new SJFScheduler(key.equals("SRTF") ? quantum : 0,
+				Double.parseDouble(System.getProperty("osp.threads.burstAlpha", "0.5")));
+		}
+		if(key.equals("STRIDE") || key.equals("LOTTERY"))
+			return new ProportionalShareScheduler(key.equals("LOTTERY"), quantum);
+		if(key.equals("GANG"))
+			return new GangScheduler(Integer.getInteger("osp.threads.gangQuantum", 0).intValue(),
+				Integer.getInteger("osp.threads.gangSize", 4).intValue());
+		if(key.equals("SMP"))
+		{
+			String cpuScheduler = System.getProperty("osp.threads.cpuScheduler", DEFAULT_SCHEDULER);
+			if(cpuScheduler.trim().equalsIgnoreCase("SMP"))
+				cpuScheduler = DEFAULT_SCHEDULER; // Run queues cannot themselves be SMP
+			return new SMPScheduler(Integer.getInteger("osp.threads.cpus", 2).intValue(),
+				cpuScheduler, Boolean.getBoolean("osp.threads.affinity"));
+		}
+		if(key.equals("MLFQ"))
+			return new MLFQScheduler(System.getProperty("osp.threads.mlfqQuanta", "10,20,40"),
+				Long.getLong("osp.threads.mlfqBoost", 1000).longValue());
+		if(key.equals("PRIORITY"))
+			return new PriorityScheduler(Integer.getInteger("osp.threads.priorityQuantum", 0).intValue(),
+				Long.getLong("osp.threads.agingInterval", 0).longValue());
+
+		MyOut.print("osp.Threads.ThreadCB", "Unknown scheduler " + name + ", using " + DEFAULT_SCHEDULER);
+		return createScheduler(DEFAULT_SCHEDULER);
+	}
+
+	// CPU time of the current burst, including the time before earlier preemptions
+	long currentBurst()
+	{
+		return burstTime + (HClock.get() - dispatchTime);
+	}
+
+	// Starts a new burst once the current one ended by blocking or by using its slice
+	void endBurst()
+	{
+		SchedulerMetrics.burstLength.record(currentBurst());
+		burstTime = 0;
+		dispatchTime = HClock.get();
+	}
+
+	// Appends a thread that has become ready to the scheduler's queue
+	private static void makeReady(ThreadCB thread)
+	{
+		thread.readySince = HClock.get();
+		scheduler.add(thread);
+	}
+
+	// Mean time from creation to first dispatch over all started threads
+	public static double getMeanResponseTime()
+	{
+		return SchedulerMetrics.responseTime.mean();
+	}
+
+	// Context switches per 1000 ticks of simulated time
+	public static double getContextSwitchRate()
+	{
+		long now = HClock.get();
+		return now == 0 ? 0.0 : SchedulerMetrics.contextSwitches * 1000.0 / now;
+	}
+
+	/**
+	   Address-space switches GANG scheduling saved by dispatching threads
+	   of the same task back to back; 0 under other schedulers.
+	*/
+	public static long getAvoidedSwitches()
+	{
+		return scheduler instanceof GangScheduler ? ((GangScheduler)scheduler).avoidedSwitches : 0;
+	}
+
+	/**
+	   Returns the scheduler metrics collected so far, as CSV or, if
+	   json is true, as JSON.
+	*/
+	public static String getMetrics(boolean json)
+	{
+		return json ? SchedulerMetrics.toJSON() : SchedulerMetrics.toCSV();
+	}
+
+	// Utilization of a logical CPU under the SMP scheduler, 0 otherwise
+	public static double getCpuUtilization(int cpu)
+	{
+		return (scheduler instanceof SMPScheduler) ? ((SMPScheduler)scheduler).utilization(cpu) : 0.0;
+	}
+
+	// Threads that ran on a different logical CPU than the time before
+	public static long getMigrations()
+	{
+		return (scheduler instanceof SMPScheduler) ? ((SMPScheduler)scheduler).migrations : 0;
+	}
+
+	// Threads an idle logical CPU took from the busiest one
+	public static long getSteals()
+	{
+		return (scheduler instanceof SMPScheduler) ? ((SMPScheduler)scheduler).steals : 0;
+	}
+
+	// Number of logical CPUs, 1 unless the SMP scheduler is used
+	public static int getCpuCount()
+	{
+		return (scheduler instanceof SMPScheduler) ? ((SMPScheduler)scheduler).cpuCount() : 1;
+	}
+
+	// PTBR changes on a logical CPU under the SMP scheduler, 0 otherwise
+	public static long getAddressSpaceSwitches(int cpu)
+	{
+		return (scheduler instanceof SMPScheduler) ? ((SMPScheduler)scheduler).addressSpaceSwitches(cpu) : 0;
+	}
+
+	// Gives the task a number of tickets under the STRIDE and LOTTERY schedulers
+	public static void setTickets(TaskCB task, int tickets)
+	{
+		if(scheduler instanceof ProportionalShareScheduler)
+		{
+			((ProportionalShareScheduler)scheduler).setTickets(task, tickets);
+		}
+	}
+
+	// Target and achieved CPU share of every task under the STRIDE and LOTTERY schedulers
+	public static String getShareReport()
+	{
+		return (scheduler instanceof ProportionalShareScheduler) ? ((ProportionalShareScheduler)scheduler).report() : "";
+	}
+
+	// Thread currently on the CPU, or null if the CPU is idle
+	static ThreadCB getRunningThread()
+	{
+		try
+		{
+			return MMU.getPTBR().getTask().getCurrentThread();
+		}
+		catch(NullPointerException e)
+		{
+			return null;
+		}
+	}
+
     /** 
         Sets up a new thread and adds it to the given task. 
         The method must set the ready status 
@@ -109,8 +299,8 @@ public class ThreadCB extends IflThreadCB
             ThreadCB.dispatch(); //Choose a new thread from the queue
             return null;
         }
-        readyQueue.append(thread);
-		count++;		//Increment count of total threads
+        makeReady(thread);
+		SchedulerMetrics.created++;		//Increment count of total threads
         ThreadCB.dispatch();                                
         return thread; 
 		
@@ -131,13 +321,11 @@ public class ThreadCB extends IflThreadCB
     */
     public void do_kill()
     {
-		throughputTime = HClock.get(); //Get current clock time
-		MyOut.print("OSP.Threads.ThreadCB","Program Execution Time: " + throughputTime + " Count: " + count); // Print execution time to log
         // your code goes here
 		int status = this.getStatus();
 		
 		if(status == ThreadReady){ //If ready, remove from queue
-			if(readyQueue.remove(this) == null)
+			if(!scheduler.remove(this))
 				return;
 		}
 		else if(status == ThreadRunning){ // If running, release resources and remove
@@ -149,6 +337,7 @@ public class ThreadCB extends IflThreadCB
                     {
                         MMU.setPTBR(null);
                         getTask().setCurrentThread(null);					
+                        scheduler.blocked(this);
                     }
                 }
                 catch(NullPointerException e){}
@@ -157,6 +346,9 @@ public class ThreadCB extends IflThreadCB
 		if((getTask().removeThread(this)) != SUCCESS)
 			return;                                       
         setStatus(ThreadKill);                                              
+		SchedulerMetrics.exits++;
+		SchedulerMetrics.lastExit = HClock.get();
+		SchedulerMetrics.turnaround.record(HClock.get() - getCreationTime());
         
         for(int i = 0; i<Device.getTableSize(); i++)                        
         {
@@ -167,7 +359,6 @@ public class ThreadCB extends IflThreadCB
         ThreadCB.dispatch();                                                
         if(getTask().getThreadCount() == 0) //Kill task if it has no active threads
             getTask().kill();
-        }
     }
 
     /** Suspends the thread that is currenly on the processor on the 
@@ -205,17 +396,20 @@ public class ThreadCB extends IflThreadCB
                     MMU.setPTBR(null);
                     getTask().setCurrentThread(null);
                     setStatus(ThreadWaiting);                           
+                    scheduler.blocked(this);
+                    endBurst();
+                    SchedulerMetrics.suspensions++;
                 }
             }
             catch(NullPointerException e){}          
         }
-		if(!readyQueue.contains(this))
+		if(!scheduler.contains(this))
         {
             event.addThread(this);                                      
         }
         else
         {
-            readyQueue.remove(this);
+            scheduler.remove(this);
         }
         
         ThreadCB.dispatch();  
@@ -238,8 +432,6 @@ public class ThreadCB extends IflThreadCB
             return;
         }
       
-        MyOut.print(this, "Resuming " + this);
-        
 		// If single thread is waiting put it in ready queue
 		if(this.getStatus() == ThreadWaiting) {
             setStatus(ThreadReady);
@@ -248,7 +440,7 @@ public class ThreadCB extends IflThreadCB
         }
         
         if (getStatus() == ThreadReady) {
-            readyQueue.append(this);
+            makeReady(this);
         }
         
         ThreadCB.dispatch(); 
@@ -278,36 +470,53 @@ public class ThreadCB extends IflThreadCB
             thread = MMU.getPTBR().getTask().getCurrentThread();    
         }
         catch(NullPointerException e){}
+        ThreadCB previous = thread;
         //Place current running thread to end of queue
         if(thread != null)                                          
         {
             thread.getTask().setCurrentThread(null);
             MMU.setPTBR(null);
             thread.setStatus(ThreadReady);
-            readyQueue.append(thread);
+            thread.burstTime = thread.currentBurst(); // Preempted, the burst goes on next time
+            makeReady(thread);
         }
         
-        if(readyQueue.isEmpty())                                    
+        if(scheduler.isEmpty())                                    
         {
             MMU.setPTBR(null);
             return FAILURE;
         }
-        //remove the head from the queue and make it as current running thread
+        //take the next thread chosen by the scheduler and make it as current running thread
         else
         {
-            thread = (ThreadCB) readyQueue.removeHead();            
+            SchedulerMetrics.queueLength.record(scheduler.size());
+            thread = scheduler.next();            
+            SchedulerMetrics.dispatches++;
+            if(thread != previous)
+            {
+                SchedulerMetrics.contextSwitches++;
+            }
+            thread.dispatchTime = HClock.get();
+            SchedulerMetrics.waitingTime.record(thread.dispatchTime - thread.readySince);
+            if(thread.getTask() != lastTask)
+            {
+                SchedulerMetrics.addressSpaceSwitches++;
+                lastTask = thread.getTask();
+            }
             MMU.setPTBR(thread.getTask().getPageTable());           
             thread.getTask().setCurrentThread(thread);              
             thread.setStatus(ThreadRunning);
 			if(!thread.getStarted())
 			{
 				thread.setStarted(true);
-
-				sumOfResponseTime = sumOfResponseTime + (HClock.get() - (thread.getCreationTime()));
-				MyOut.print("OSP.Threads.ThreadCB", "Sum of Response Time for " + count + " threads: " + sumOfResponseTime);
+				SchedulerMetrics.responseTime.record(HClock.get() - thread.getCreationTime());
 			}
         }
-		HTimer.set(30);
+		int quantum = scheduler.timeSlice(thread);
+		if(quantum > 0)
+		{
+			HTimer.set(quantum);
+		}
         return SUCCESS;  
     }
 
@@ -321,7 +530,8 @@ public class ThreadCB extends IflThreadCB
     */
     public static void atError()
     {
-        MyOut.print(this,"Some Error has occurred!");
+        MyOut.print("osp.Threads.ThreadCB","Some Error has occurred!");
+        MyOut.print("osp.Threads.ThreadCB", SchedulerMetrics.toCSV());
 
     }
 
@@ -334,7 +544,7 @@ public class ThreadCB extends IflThreadCB
      */
     public static void atWarning()
     {
-        MyOut.print(this,"Warning!");
+        MyOut.print("osp.Threads.ThreadCB","Warning!");
 
     }
 
@@ -0,0 +1,84 @@
+package osp.Threads;
+
+/**
+   FIFO queue of threads linked through fields of ThreadCB. Because each
+   thread knows which queue it is in and who its neighbours are,
+   contains() and remove() take O(1) instead of the linear walk of a
+   GenericList. A thread can be in at most one ThreadQueue at a time.
+*/
+class ThreadQueue
+{
+	private ThreadCB head;
+	private ThreadCB tail;
+	private int length = 0;
+
+	void append(ThreadCB thread)
+	{
+		if(thread.queue != null)
+		{
+			thread.queue.remove(thread);
+		}
+		thread.queuePrev = tail;
+		thread.queueNext = null;
+		if(tail != null)
+			tail.queueNext = thread;
+		else
+			head = thread;
+		tail = thread;
+		thread.queue = this;
+		length++;
+	}
+
+	// First thread without removing it, or null if the queue is empty
+	ThreadCB head()
+	{
+		return head;
+	}
+
+	// Removes and returns the first thread, or null if the queue is empty
+	ThreadCB removeHead()
+	{
+		ThreadCB thread = head;
+		if(thread != null)
+		{
+			remove(thread);
+		}
+		return thread;
+	}
+
+	boolean remove(ThreadCB thread)
+	{
+		if(thread.queue != this)
+		{
+			return false;
+		}
+		if(thread.queuePrev != null)
+			thread.queuePrev.queueNext = thread.queueNext;
+		else
+			head = thread.queueNext;
+		if(thread.queueNext != null)
+			thread.queueNext.queuePrev = thread.queuePrev;
+		else
+			tail = thread.queuePrev;
+		thread.queuePrev = null;
+		thread.queueNext = null;
+		thread.queue = null;
+		length--;
+		return true;
+	}
+
+	boolean contains(ThreadCB thread)
+	{
+		return thread.queue == this;
+	}
+
+	boolean isEmpty()
+	{
+		return head == null;
+	}
+
+	int length()
+	{
+		return length;
+	}
+}
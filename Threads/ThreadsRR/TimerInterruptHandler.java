@@ -21,6 +21,15 @@ public class TimerInterruptHandler extends IflTimerInterruptHandler
     public void do_handleInterrupt()
     {
         // your code goes here
+		ThreadCB thread = ThreadCB.getRunningThread();
+		if(thread != null)
+		{
+			SchedulerMetrics.preemptions++;
+			if(ThreadCB.scheduler.quantumExpired(thread)) // Used its whole time slice
+			{
+				thread.endBurst();
+			}
+		}
 		ThreadCB.dispatch();
     }
 